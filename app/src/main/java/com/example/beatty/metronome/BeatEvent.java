@@ -0,0 +1,48 @@
+package com.example.beatty.metronome;
+
+/**
+ * A slot published to a {@link BeatEventRing}.  Instances are reused by the consumer that
+ * reads into them, so the values only hold until the next read
+ */
+public class BeatEvent {
+
+    private long sequence;
+    private int position;
+    private BeatScheduler.Accent accent;
+    private long time;
+
+    void set(long sequence, int position, BeatScheduler.Accent accent, long time) {
+        this.sequence = sequence;
+        this.position = position;
+        this.accent = accent;
+        this.time = time;
+    }
+
+    /**
+     * The number of events published before this one
+     * @return
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * The index of the slot within the measure
+     * @return
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    public BeatScheduler.Accent getAccent() {
+        return accent;
+    }
+
+    /**
+     * The clock time the slot is due
+     * @return nanoseconds
+     */
+    public long getTime() {
+        return time;
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.beatty.metronome;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size ring that one producer publishes beat events into and any number of consumers
+ * read from, each through its own {@link Cursor}.  The producer never waits for a consumer;
+ * a consumer that falls a whole ring behind skips the events that were overwritten.
+ *
+ * Each entry is stamped with its sequence number before and after it is written, so a
+ * consumer can tell when an entry was replaced while it was being read.  Nothing is allocated
+ * after construction
+ */
+public class BeatEventRing {
+
+    /**
+     * The number of events kept when no capacity is given
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private static final int FIELDS = 3;
+    private static final int STAMP = 0;
+    private static final int META = 1;
+    private static final int TIME = 2;
+
+    /**
+     * Marks an entry that is being written
+     */
+    private static final long WRITING = -1;
+
+    private static final BeatScheduler.Accent[] ACCENTS = BeatScheduler.Accent.values();
+
+    /**
+     * Reads events in order at its own pace
+     */
+    public class Cursor {
+
+        /**
+         * The sequence of the next event to read
+         */
+        private long next;
+
+        private long overruns;
+
+        private Cursor(long next) {
+            this.next = next;
+        }
+
+        /**
+         * Reads the next event, skipping any that have been overwritten
+         * @param event receives the event
+         * @return false if no event is waiting
+         */
+        public boolean poll(BeatEvent event) {
+            while (true) {
+                long published = cursor;
+                if (next > published) {
+                    return false;
+                }
+
+                if (published - next >= capacity) {
+                    skipTo(published - capacity + 1);
+                }
+
+                int base = (int) (next & mask) * FIELDS;
+                long meta = entries.get(base + META);
+                long time = entries.get(base + TIME);
+
+                // the entry is only valid if it still holds this sequence after reading it
+                if (entries.get(base + STAMP) != next) {
+                    skipTo(next + 1);
+                    continue;
+                }
+
+                event.set(next, (int) (meta >> 8), ACCENTS[(int) (meta & 0xff)], time);
+                next++;
+                return true;
+            }
+        }
+
+        /**
+         * Waits until an event is ready to be read
+         * @param timeoutMillis the longest time to wait, or 0 to wait until interrupted
+         * @throws InterruptedException
+         */
+        public void await(long timeoutMillis) throws InterruptedException {
+            synchronized (BeatEventRing.this) {
+                if (next > cursor) {
+                    BeatEventRing.this.wait(timeoutMillis);
+                }
+            }
+        }
+
+        /**
+         * Discards all events that have not been read
+         */
+        public void skipAll() {
+            next = cursor + 1;
+        }
+
+        /**
+         * The sequence of the next event this cursor will read
+         * @return
+         */
+        public long getSequence() {
+            return next;
+        }
+
+        /**
+         * The number of events this cursor lost because it fell behind
+         * @return
+         */
+        public long getOverruns() {
+            return overruns;
+        }
+
+        private void skipTo(long sequence) {
+            overruns += sequence - next;
+            next = sequence;
+        }
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray entries;
+
+    /**
+     * The sequence of the last published event
+     */
+    private volatile long cursor = -1;
+
+    public BeatEventRing() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty ring
+     * @param capacity the number of events kept, which must be a power of two
+     */
+    public BeatEventRing(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.entries = new AtomicLongArray(capacity * FIELDS);
+
+        for (int i = 0; i < capacity; i++) {
+            entries.set(i * FIELDS + STAMP, WRITING);
+        }
+    }
+
+    /**
+     * Adds an event, overwriting the oldest one.  Must only be called from one thread
+     * @param position the index of the slot within the measure
+     * @param accent the emphasis of the slot
+     * @param time the clock time the slot is due
+     */
+    public void publish(int position, BeatScheduler.Accent accent, long time) {
+        long sequence = cursor + 1;
+        int base = (int) (sequence & mask) * FIELDS;
+
+        entries.set(base + STAMP, WRITING);
+        entries.set(base + META, ((long) position << 8) | accent.ordinal());
+        entries.set(base + TIME, time);
+        entries.set(base + STAMP, sequence);
+
+        cursor = sequence;
+
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Creates a cursor that reads the events published from now on
+     * @return
+     */
+    public Cursor newCursor() {
+        return new Cursor(cursor + 1);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * The sequence of the last published event
+     * @return the sequence or -1 if nothing has been published
+     */
+    public long getPublished() {
+        return cursor;
+    }
+}
@@ -0,0 +1,285 @@
+package com.example.beatty.metronome;
+
+/**
+ * Decides when each note slot of a measure is played.  Slot times are computed from a fixed
+ * anchor rather than from the previous tick, so late ticks do not push later ones back.
+ * Each time is the exact fraction of a minute rounded down to the nanosecond, so slot lengths
+ * that are not whole nanoseconds, such as triplets, do not accumulate rounding error.
+ *
+ * The scheduler is not thread safe; all methods must be called on the thread that runs the
+ * tasks of its {@link TickExecutor}
+ */
+public class BeatScheduler {
+
+    private static final long NANOS_PER_MINUTE = 60L * 1000 * 1000 * 1000;
+
+    /**
+     * The emphasis given to a slot
+     */
+    public enum Accent {
+        /** The first beat of a measure */
+        EMPHASIS,
+        /** Any other main beat */
+        BEAT,
+        /** A subdivision between beats */
+        SUBDIVISION
+    }
+
+    /**
+     * Receives each slot as it is reached
+     */
+    public interface Listener {
+
+        /**
+         * Called once for every slot that is played
+         * @param position the index of the slot within the measure
+         * @param accent the emphasis of the slot
+         * @param slotTime the clock time the slot is due, which may be slightly in the past
+         */
+        void onSlot(int position, Accent accent, long slotTime);
+    }
+
+    private final Clock clock;
+    private final TickExecutor executor;
+    private final Listener listener;
+
+    private int beatsPerMinute = 120;
+    private RhythmPattern pattern = RhythmPattern.of(TimeSignature.COMMON_TIME, 1);
+
+    private boolean running = false;
+
+    /**
+     * The number of slots since the start, including the next one to play
+     */
+    private long nextSlot;
+
+    /**
+     * The slot that starts the current measure
+     */
+    private long measureSlot;
+
+    /**
+     * The slot and time that later slot times are measured from.  Moved whenever the tempo changes
+     */
+    private long anchorSlot;
+    private long anchorTime;
+
+    /**
+     * The number of slots per minute, which is the denominator of the slot length
+     */
+    private long slotsPerMinute;
+
+    /**
+     * The slot length rounded down, only used to estimate how many slots a late tick missed
+     */
+    private long slotNanos;
+
+    private long missedSlots;
+    private long maxLateness;
+
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            onTick();
+        }
+    };
+
+    public BeatScheduler(Clock clock, TickExecutor executor, Listener listener) {
+        this.clock = clock;
+        this.executor = executor;
+        this.listener = listener;
+        updateSlotLength();
+    }
+
+    /**
+     * Starts playing from the beginning of a measure, with the first slot due now
+     */
+    public void start() {
+        start(0);
+    }
+
+    /**
+     * Starts playing from the beginning of a measure, with the first slot due a little later
+     * so that the outputs are ready for it
+     * @param leadNanos the time until the first slot
+     */
+    public void start(long leadNanos) {
+        stop();
+
+        running = true;
+        missedSlots = 0;
+        maxLateness = 0;
+        nextSlot = 0;
+        measureSlot = 0;
+        anchorSlot = 0;
+        anchorTime = clock.nanoTime() + leadNanos;
+
+        executor.schedule(tick, anchorTime);
+    }
+
+    /**
+     * Stops playing.  Statistics are kept until the next {@link #start()}
+     */
+    public void stop() {
+        running = false;
+        executor.cancel(tick);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Changes the tempo, starting with the next slot.  The next slot keeps the time it was
+     * already due at
+     * @param beatsPerMinute
+     */
+    public void setBeatsPerMinute(int beatsPerMinute) {
+        if (beatsPerMinute <= 0) {
+            throw new IllegalArgumentException("Beats per minute must be positive: " + beatsPerMinute);
+        }
+
+        reanchor();
+        this.beatsPerMinute = beatsPerMinute;
+        updateSlotLength();
+    }
+
+    public int getBeatsPerMinute() {
+        return beatsPerMinute;
+    }
+
+    /**
+     * Changes the time signature and subdivision.  The next slot becomes the start of a measure
+     * and keeps the time it was already due at.  Setting the current meter has no effect
+     * @param timeSignature
+     * @param subdivision the number of slots per beat
+     */
+    public void setMeter(TimeSignature timeSignature, int subdivision) {
+        setPattern(RhythmPattern.of(timeSignature, subdivision));
+    }
+
+    /**
+     * Changes the pattern of slots and accents.  The next slot becomes the start of a measure
+     * and keeps the time it was already due at.  Setting an equal pattern has no effect
+     * @param pattern
+     */
+    public void setPattern(RhythmPattern pattern) {
+        if (pattern.equals(this.pattern)) {
+            return;
+        }
+
+        reanchor();
+        this.pattern = pattern;
+        this.measureSlot = nextSlot;
+        updateSlotLength();
+    }
+
+    public RhythmPattern getPattern() {
+        return pattern;
+    }
+
+    public TimeSignature getTimeSignature() {
+        return pattern.getTimeSignature();
+    }
+
+    public int getSubdivision() {
+        return pattern.getSubdivision();
+    }
+
+    /**
+     * The number of slots in one measure
+     * @return
+     */
+    public int getSlotsPerMeasure() {
+        return pattern.getSlotsPerMeasure();
+    }
+
+    /**
+     * The number of slots skipped because their tick ran more than a whole slot late
+     * @return
+     */
+    public long getMissedSlots() {
+        return missedSlots;
+    }
+
+    /**
+     * The largest delay between the time a slot was due and the time its tick ran
+     * @return nanoseconds
+     */
+    public long getMaxLateness() {
+        return maxLateness;
+    }
+
+    /**
+     * The clock time that a slot is due.  Exact until about 1.5e8 slots after the anchor,
+     * which is more than a month of playback at the fastest tempo
+     * @param slot slots since the start
+     * @return
+     */
+    private long slotTime(long slot) {
+        return anchorTime + (slot - anchorSlot) * NANOS_PER_MINUTE / slotsPerMinute;
+    }
+
+    /**
+     * Moves the anchor to the next slot so a change in slot length only affects later slots
+     */
+    private void reanchor() {
+        if (running) {
+            anchorTime = slotTime(nextSlot);
+            anchorSlot = nextSlot;
+        }
+    }
+
+    private void updateSlotLength() {
+        slotsPerMinute = (long) beatsPerMinute * pattern.getSubdivision();
+        slotNanos = NANOS_PER_MINUTE / slotsPerMinute;
+    }
+
+    /**
+     * Plays the next slot and schedules the one after it.  Slots that are already a whole
+     * slot late are skipped rather than played in a burst
+     */
+    private void onTick() {
+        if (!running) {
+            return;
+        }
+
+        long now = clock.nanoTime();
+
+        if (now >= slotTime(nextSlot + 1)) {
+            // the estimate can only be too high since the rounded slot length is too short
+            long skipped = (now - slotTime(nextSlot)) / slotNanos;
+            while (slotTime(nextSlot + skipped) > now) {
+                skipped--;
+            }
+
+            nextSlot += skipped;
+            missedSlots += skipped;
+        }
+
+        long lateness = now - slotTime(nextSlot);
+
+        if (lateness > maxLateness) {
+            maxLateness = lateness;
+        }
+
+        int position = (int) ((nextSlot - measureSlot) % getSlotsPerMeasure());
+        long time = slotTime(nextSlot);
+        nextSlot++;
+
+        listener.onSlot(position, accentOf(position), time);
+
+        if (running) {
+            executor.schedule(tick, slotTime(nextSlot));
+        }
+    }
+
+    /**
+     * The accent for a position within the measure
+     * @param position
+     * @return
+     */
+    public Accent accentOf(int position) {
+        return pattern.getAccent(position);
+    }
+}
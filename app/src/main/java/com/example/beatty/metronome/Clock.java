@@ -0,0 +1,24 @@
+package com.example.beatty.metronome;
+
+/**
+ * A monotonic source of time in nanoseconds.  Replaced by a virtual clock in tests so timing
+ * can be checked without waiting
+ */
+public interface Clock {
+
+    /**
+     * The clock backed by {@link System#nanoTime()}
+     */
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    /**
+     * The current time
+     * @return nanoseconds from an arbitrary origin
+     */
+    long nanoTime();
+}
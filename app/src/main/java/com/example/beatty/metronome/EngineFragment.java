@@ -0,0 +1,98 @@
+package com.example.beatty.metronome;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.IBinder;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.app.FragmentManager;
+import android.util.Log;
+
+/**
+ * A fragment without a view that keeps the binding to the {@link MetronomeService} while its
+ * activity is recreated for a configuration change, so the service and its engine are not
+ * torn down by a rotation.  The binding is dropped when the fragment is destroyed for good
+ */
+public class EngineFragment extends Fragment implements ServiceConnection {
+
+    private static final String TAG = "engine";
+
+    /**
+     * Implemented by the activity to be told when the engine becomes available
+     */
+    public interface Callbacks {
+        void onEngineConnected(MetronomeEngine engine);
+    }
+
+    /**
+     * The application context, which the binding is made on so it is not tied to one activity
+     */
+    private Context context;
+
+    private MetronomeEngine engine;
+
+    /**
+     * Finds the retained fragment of an activity, adding one if this is the first instance
+     * @param activity
+     * @return
+     */
+    public static EngineFragment obtain(FragmentActivity activity) {
+        FragmentManager manager = activity.getSupportFragmentManager();
+        EngineFragment fragment = (EngineFragment) manager.findFragmentByTag(TAG);
+
+        if (fragment == null) {
+            fragment = new EngineFragment();
+            manager.beginTransaction().add(fragment, TAG).commit();
+        }
+
+        return fragment;
+    }
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setRetainInstance(true);
+
+        context = getActivity().getApplicationContext();
+        context.bindService(new Intent(context, MetronomeService.class), this, Context.BIND_AUTO_CREATE);
+    }
+
+    /**
+     * Only called when the activity is finishing, since the instance is retained otherwise.
+     * The service keeps running if it is playing
+     */
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        engine = null;
+        context.unbindService(this);
+    }
+
+    @Override
+    public void onServiceConnected(ComponentName name, IBinder service) {
+        engine = ((MetronomeService.LocalBinder) service).getEngine();
+        Log.d("engine", "connected");
+
+        if (getActivity() instanceof Callbacks) {
+            ((Callbacks) getActivity()).onEngineConnected(engine);
+        }
+    }
+
+    @Override
+    public void onServiceDisconnected(ComponentName name) {
+        engine = null;
+        Log.d("engine", "disconnected");
+    }
+
+    /**
+     * The engine of the bound service
+     * @return the engine or null if the service is not yet connected
+     */
+    public MetronomeEngine getEngine() {
+        return engine;
+    }
+}
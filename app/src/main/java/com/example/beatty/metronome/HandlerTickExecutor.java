@@ -0,0 +1,36 @@
+package com.example.beatty.metronome;
+
+import android.os.Handler;
+
+/**
+ * Runs tasks on the thread of a Handler at times from a {@link Clock}
+ */
+public class HandlerTickExecutor implements TickExecutor {
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final Handler handler;
+    private final Clock clock;
+
+    public HandlerTickExecutor(Handler handler, Clock clock) {
+        this.handler = handler;
+        this.clock = clock;
+    }
+
+    /**
+     * Posts the task with the remaining delay rounded up to whole milliseconds, so it never
+     * runs before its time
+     */
+    @Override
+    public void schedule(Runnable task, long atNanos) {
+        long delayNanos = Math.max(0, atNanos - clock.nanoTime());
+
+        handler.removeCallbacks(task);
+        handler.postDelayed(task, (delayNanos + NANOS_PER_MILLI - 1) / NANOS_PER_MILLI);
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        handler.removeCallbacks(task);
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.beatty.metronome;
+
+import java.util.Arrays;
+
+/**
+ * One measure of vibration pulses, compiled from a {@link RhythmPattern} and tempo so the whole
+ * measure can be handed to the vibrator in a single call.  The waveform is a list of segments
+ * that alternate between off and on, starting with off, each with a duration and an amplitude.
+ * Subdivisions are not felt, matching the sound
+ */
+public class HapticBar {
+
+    /**
+     * The longest pulse for the first beat of a measure
+     */
+    public static final long EMPHASIS_PULSE_MS = 50;
+
+    /**
+     * The longest pulse for other beats
+     */
+    public static final long BEAT_PULSE_MS = 30;
+
+    public static final int EMPHASIS_AMPLITUDE = 255;
+    public static final int BEAT_AMPLITUDE = 160;
+
+    private final RhythmPattern pattern;
+    private final long slotsPerMinute;
+
+    private final long[] timings;
+    private final int[] amplitudes;
+    private final long duration;
+
+    private HapticBar(RhythmPattern pattern, long slotsPerMinute, long[] timings, int[] amplitudes, long duration) {
+        this.pattern = pattern;
+        this.slotsPerMinute = slotsPerMinute;
+        this.timings = timings;
+        this.amplitudes = amplitudes;
+        this.duration = duration;
+    }
+
+    /**
+     * Compiles the pulses of one measure.  Pulses start on the exact slot times rounded down
+     * to the millisecond, and are shortened to half a slot at fast tempos so they stay apart
+     * @param pattern
+     * @param beatsPerMinute
+     * @return
+     */
+    public static HapticBar compile(RhythmPattern pattern, int beatsPerMinute) {
+        long slotsPerMinute = (long) beatsPerMinute * pattern.getSubdivision();
+        long slotMillis = 60000 / slotsPerMinute;
+        int slots = pattern.getSlotsPerMeasure();
+
+        // at most an off and an on segment per slot
+        long[] timings = new long[slots * 2];
+        int[] amplitudes = new int[slots * 2];
+        int segments = 0;
+        long end = 0;
+
+        for (int i = 0; i < slots; i++) {
+            BeatScheduler.Accent accent = pattern.getAccent(i);
+            if (accent == BeatScheduler.Accent.SUBDIVISION) continue;
+
+            long start = i * 60000L / slotsPerMinute;
+            long pulse = Math.min(accent == BeatScheduler.Accent.EMPHASIS ? EMPHASIS_PULSE_MS : BEAT_PULSE_MS,
+                    Math.max(1, slotMillis / 2));
+
+            timings[segments] = start - end;
+            amplitudes[segments++] = 0;
+            timings[segments] = pulse;
+            amplitudes[segments++] = accent == BeatScheduler.Accent.EMPHASIS ? EMPHASIS_AMPLITUDE : BEAT_AMPLITUDE;
+            end = start + pulse;
+        }
+
+        return new HapticBar(pattern, slotsPerMinute, Arrays.copyOf(timings, segments),
+                Arrays.copyOf(amplitudes, segments), slots * 60000L / slotsPerMinute);
+    }
+
+    /**
+     * The rest of the waveform from a point in the measure, for a measure that is submitted late.
+     * A negative offset is a measure that starts later, which lengthens the first off segment
+     * @param offsetMillis the time since the start of the measure
+     * @return the remaining waveform, which may be empty
+     */
+    public HapticBar from(long offsetMillis) {
+        if (offsetMillis == 0 || (offsetMillis < 0 && isEmpty())) return this;
+
+        if (offsetMillis < 0) {
+            long[] delayed = timings.clone();
+            delayed[0] -= offsetMillis;
+            return new HapticBar(pattern, slotsPerMinute, delayed, amplitudes, duration - offsetMillis);
+        }
+
+        long elapsed = 0;
+        for (int i = 0; i < timings.length; i++) {
+            if (elapsed + timings[i] > offsetMillis) {
+                long[] restTimings = Arrays.copyOfRange(timings, i, timings.length);
+                int[] restAmplitudes = Arrays.copyOfRange(amplitudes, i, amplitudes.length);
+                restTimings[0] -= offsetMillis - elapsed;
+
+                // the waveform always starts with an off segment
+                if (restAmplitudes[0] != 0) {
+                    restTimings = prepend(0, restTimings);
+                    restAmplitudes = prepend(0, restAmplitudes);
+                }
+
+                return new HapticBar(pattern, slotsPerMinute, restTimings, restAmplitudes,
+                        Math.max(0, duration - offsetMillis));
+            }
+            elapsed += timings[i];
+        }
+
+        return new HapticBar(pattern, slotsPerMinute, new long[0], new int[0], Math.max(0, duration - offsetMillis));
+    }
+
+    /**
+     * The pattern the measure was compiled from
+     * @return
+     */
+    public RhythmPattern getPattern() {
+        return pattern;
+    }
+
+    /**
+     * The time a slot starts within the measure, rounded down like the pulses
+     * @param slot the index of the slot within the measure
+     * @return milliseconds since the start of the measure
+     */
+    public long getSlotStart(int slot) {
+        return slot * 60000L / slotsPerMinute;
+    }
+
+    /**
+     * The duration of each segment, alternating off and on
+     * @return milliseconds
+     */
+    public long[] getTimings() {
+        return timings.clone();
+    }
+
+    /**
+     * The amplitude of each segment from 0 to 255, which is 0 for the off segments
+     * @return
+     */
+    public int[] getAmplitudes() {
+        return amplitudes.clone();
+    }
+
+    /**
+     * The length of the measure, which may be longer than the waveform
+     * @return milliseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    public boolean isEmpty() {
+        return timings.length == 0;
+    }
+
+    private static long[] prepend(long value, long[] array) {
+        long[] result = new long[array.length + 1];
+        result[0] = value;
+        System.arraycopy(array, 0, result, 1, array.length);
+        return result;
+    }
+
+    private static int[] prepend(int value, int[] array) {
+        int[] result = new int[array.length + 1];
+        result[0] = value;
+        System.arraycopy(array, 0, result, 1, array.length);
+        return result;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.beatty.metronome;
+
+/**
+ * Plays vibration waveforms, so the haptic output can be replaced in tests
+ */
+public interface HapticOutput {
+
+    /**
+     * Plays a waveform once, replacing any waveform that is still playing
+     * @param timings the duration of each segment in milliseconds, alternating off and on and
+     *                starting with off
+     * @param amplitudes the amplitude of each segment from 0 to 255
+     */
+    void play(long[] timings, int[] amplitudes);
+
+    /**
+     * Stops any waveform that is playing
+     */
+    void cancel();
+}
@@ -0,0 +1,192 @@
+package com.example.beatty.metronome;
+
+/**
+ * A thread that vibrates the beats read from a {@link BeatEventRing}.  Rather than calling the
+ * vibrator for every beat, the compiled {@link HapticBar} of the whole measure is submitted at
+ * the start of each measure.  A measure that is reached late is trimmed by the lateness, and a
+ * tempo change resubmits the rest of the measure, so the pulses stay on the beat clock
+ */
+public class HapticThread extends Thread {
+
+    /**
+     * How long {@link #shutdown()} waits for the thread to finish
+     */
+    private static final long SHUTDOWN_TIMEOUT_MS = 1000;
+
+    private static final long NANOS_PER_MILLI = 1000 * 1000;
+
+    private boolean running;
+
+    private final BeatEventRing.Cursor events;
+    private final BeatEvent event = new BeatEvent();
+    private final HapticOutput output;
+    private final Clock clock;
+
+    /**
+     * The measure submitted at each downbeat, replaced whenever the tempo or pattern changes
+     */
+    private volatile HapticBar bar;
+
+    private volatile boolean enabled;
+
+    /**
+     * The clock time of the last cancel.  Events due before it are not played, so a downbeat
+     * that is read after playback stopped does not start vibrating again
+     */
+    private volatile long cancelTime = Long.MIN_VALUE;
+
+    /**
+     * Guards the state of the measure that is playing, which is changed from both the thread
+     * and the engine
+     */
+    private final Object measureLock = new Object();
+
+    /**
+     * Whether a waveform was submitted for the current measure and not stopped since
+     */
+    private boolean playing;
+
+    /**
+     * The position and clock time of the last slot read
+     */
+    private int lastPosition;
+    private long lastTime;
+
+    /**
+     * @param ring the ring the beat events are read from
+     * @param output
+     * @param clock the clock of the beat events
+     */
+    public HapticThread(BeatEventRing ring, HapticOutput output, Clock clock) {
+        this.events = ring.newCursor();
+        this.output = output;
+        this.clock = clock;
+    }
+
+    /**
+     * While the thread is set to run, a measure is submitted for each event that starts one
+     */
+    @Override
+    public void run() {
+        while (isRunning()) {
+            try {
+                while (events.poll(event)) {
+                    onEvent(event.getPosition(), event.getTime());
+                }
+
+                events.await(0);
+            } catch (InterruptedException e) {}
+        }
+    }
+
+    /**
+     * Submits the measure if a slot starts one
+     * @param position the index of the slot within the measure
+     * @param time the clock time the slot is due
+     */
+    void onEvent(int position, long time) {
+        synchronized (measureLock) {
+            lastPosition = position;
+            lastTime = time;
+
+            if (position != 0) return;
+
+            HapticBar current = bar;
+            playing = false;
+            if (!enabled || current == null || time < cancelTime) return;
+
+            HapticBar rest = current.from((clock.nanoTime() - time) / NANOS_PER_MILLI);
+            if (!rest.isEmpty()) {
+                output.play(rest.getTimings(), rest.getAmplitudes());
+            }
+            playing = true;
+        }
+    }
+
+    /**
+     * Sets the measure played from the next downbeat.  If only the tempo changed while a measure
+     * is playing, the rest of it is resubmitted from the next slot, which keeps the time it was
+     * due at the old tempo.  A new pattern starts a measure at the next slot anyway
+     * @param bar
+     */
+    public void setBar(HapticBar bar) {
+        synchronized (measureLock) {
+            HapticBar previous = this.bar;
+            this.bar = bar;
+
+            int next = lastPosition + 1;
+            if (!playing || !enabled || previous == null || !bar.getPattern().equals(previous.getPattern())
+                    || next >= bar.getPattern().getSlotsPerMeasure()) {
+                return;
+            }
+
+            long nextTime = lastTime + (previous.getSlotStart(next) - previous.getSlotStart(lastPosition)) * NANOS_PER_MILLI;
+            long untilNext = (nextTime - clock.nanoTime()) / NANOS_PER_MILLI;
+            HapticBar rest = bar.from(bar.getSlotStart(next)).from(-untilNext);
+
+            output.cancel();
+            if (!rest.isEmpty()) {
+                output.play(rest.getTimings(), rest.getAmplitudes());
+            }
+        }
+    }
+
+    /**
+     * Turns the vibration on or off.  Turning it off stops the measure that is playing
+     * @param enabled
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+
+        if (!enabled) {
+            synchronized (measureLock) {
+                playing = false;
+            }
+            output.cancel();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Stops the measure that is playing, such as when playback stops
+     */
+    public void cancel() {
+        synchronized (measureLock) {
+            playing = false;
+            cancelTime = clock.nanoTime();
+        }
+        output.cancel();
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Sets the state of the thread.  {@link #start()} must be called to actually
+     * run the thread
+     * @param running
+     */
+    public synchronized void setRunning(boolean running) {
+        this.running = running;
+    }
+
+    /**
+     * Stops the thread and waits for it to finish
+     */
+    public void shutdown() {
+        setRunning(false);
+        interrupt();
+
+        try {
+            join(SHUTDOWN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        output.cancel();
+    }
+}
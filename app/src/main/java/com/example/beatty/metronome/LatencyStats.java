@@ -0,0 +1,94 @@
+package com.example.beatty.metronome;
+
+import java.util.Locale;
+
+/**
+ * The delay from the time a beat is due until its sound is expected at the output, kept
+ * separately for the first sound after a start and for the sounds after it.  Written by the
+ * sound thread and read from any thread
+ */
+public class LatencyStats {
+
+    /**
+     * The sequence of the first beat event of the current start
+     */
+    private long startSequence = Long.MAX_VALUE;
+
+    private long firstBeatLatency = -1;
+
+    private long steadyCount;
+    private long steadySum;
+    private long steadyMax;
+
+    /**
+     * Begins measuring a new start, forgetting the previous one
+     * @param firstSequence the sequence of the first event that will be published
+     */
+    public synchronized void markStart(long firstSequence) {
+        startSequence = firstSequence;
+        firstBeatLatency = -1;
+        steadyCount = 0;
+        steadySum = 0;
+        steadyMax = 0;
+    }
+
+    /**
+     * Records the latency of a sound
+     * @param sequence the sequence of the beat event of the sound
+     * @param latencyNanos the time from when the beat was due until the sound is expected
+     */
+    public synchronized void record(long sequence, long latencyNanos) {
+        if (sequence < startSequence) {
+            return;
+        }
+
+        if (firstBeatLatency == -1) {
+            firstBeatLatency = latencyNanos;
+            return;
+        }
+
+        steadyCount++;
+        steadySum += latencyNanos;
+        if (latencyNanos > steadyMax) {
+            steadyMax = latencyNanos;
+        }
+    }
+
+    /**
+     * The latency of the first sound after the start
+     * @return nanoseconds or -1 if it has not played yet
+     */
+    public synchronized long getFirstBeatLatency() {
+        return firstBeatLatency;
+    }
+
+    /**
+     * The mean latency of the sounds after the first
+     * @return nanoseconds or -1 if none have played
+     */
+    public synchronized long getSteadyStateLatency() {
+        return steadyCount > 0 ? steadySum / steadyCount : -1;
+    }
+
+    /**
+     * The largest latency of the sounds after the first
+     * @return nanoseconds
+     */
+    public synchronized long getMaxSteadyStateLatency() {
+        return steadyMax;
+    }
+
+    /**
+     * The number of sounds after the first
+     * @return
+     */
+    public synchronized long getSteadyStateCount() {
+        return steadyCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "first beat %.1f ms, steady state %.1f ms (max %.1f ms over %d)",
+                firstBeatLatency / 1e6, getSteadyStateLatency() / 1e6, steadyMax / 1e6, steadyCount);
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.beatty.metronome;
+
+import android.os.Looper;
+import android.util.Printer;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Finds messages on the main looper that take long enough to delay the beat ticks.  The
+ * looper's message logging is used to time every dispatched message, and any message over the
+ * threshold is recorded as a stall.  Each tick reports how late it was dispatched, and is
+ * linked to the stalls that ended while it was waiting.
+ *
+ * The most recent stalls are kept in a fixed size log, which is reused so that nothing is
+ * allocated while monitoring.  Only meant for debug builds, since message logging formats a
+ * string for every message.  All methods must be called on the main thread
+ */
+public class MainThreadStallMonitor implements Printer {
+
+    /**
+     * Messages longer than this are stalls, which is about one frame
+     */
+    public static final long DEFAULT_THRESHOLD_NANOS = 16 * 1000 * 1000;
+
+    /**
+     * The number of stalls kept when no capacity is given
+     */
+    public static final int DEFAULT_CAPACITY = 128;
+
+    private static final String DISPATCH_PREFIX = ">>>>> Dispatching to ";
+    private static final String FINISH_PREFIX = "<<<<< Finished";
+
+    /**
+     * A message that ran longer than the threshold
+     */
+    public static class Stall {
+        private long start;
+        private long end;
+        private String message;
+        private int delayedTicks;
+        private long maxTickLateness;
+
+        /**
+         * The clock time the message was dispatched
+         * @return nanoseconds
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * @return nanoseconds
+         */
+        public long getDuration() {
+            return end - start;
+        }
+
+        /**
+         * The handler, callback and what of the message, as logged by the looper
+         * @return
+         */
+        public String getMessage() {
+            return message.startsWith(DISPATCH_PREFIX) ? message.substring(DISPATCH_PREFIX.length()) : message;
+        }
+
+        /**
+         * The number of ticks that were due while the message ran
+         * @return
+         */
+        public int getDelayedTicks() {
+            return delayedTicks;
+        }
+
+        /**
+         * The longest dispatch lateness of the delayed ticks
+         * @return nanoseconds
+         */
+        public long getMaxTickLateness() {
+            return maxTickLateness;
+        }
+    }
+
+    private final Clock clock;
+    private final long thresholdNanos;
+    private final Stall[] stalls;
+
+    /**
+     * The number of stalls recorded, including those that no longer fit in the log
+     */
+    private long stallCount;
+
+    private long dispatchStart = -1;
+    private String dispatchMessage;
+
+    private long ticks;
+    private long maxTickLateness;
+
+    private Looper looper;
+
+    public MainThreadStallMonitor() {
+        this(Clock.SYSTEM, DEFAULT_THRESHOLD_NANOS, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a monitor that is not yet installed
+     * @param clock
+     * @param thresholdNanos the shortest message that is a stall
+     * @param capacity the number of stalls kept
+     */
+    public MainThreadStallMonitor(Clock clock, long thresholdNanos, int capacity) {
+        this.clock = clock;
+        this.thresholdNanos = thresholdNanos;
+        this.stalls = new Stall[capacity];
+
+        for (int i = 0; i < capacity; i++) {
+            stalls[i] = new Stall();
+        }
+    }
+
+    /**
+     * Starts timing the messages of a looper.  Replaces any other message logging
+     * @param looper
+     */
+    public void install(Looper looper) {
+        this.looper = looper;
+        looper.setMessageLogging(this);
+    }
+
+    /**
+     * Stops timing messages.  The log is kept
+     */
+    public void uninstall() {
+        if (looper != null) {
+            looper.setMessageLogging(null);
+            looper = null;
+        }
+
+        dispatchStart = -1;
+    }
+
+    /**
+     * Called by the looper before and after each message
+     * @param x the looper's description of the message
+     */
+    @Override
+    public void println(String x) {
+        long now = clock.nanoTime();
+
+        if (x.startsWith(DISPATCH_PREFIX)) {
+            dispatchStart = now;
+            dispatchMessage = x;
+        } else if (x.startsWith(FINISH_PREFIX) && dispatchStart != -1) {
+            if (now - dispatchStart >= thresholdNanos) {
+                Stall stall = stalls[(int) (stallCount % stalls.length)];
+                stall.start = dispatchStart;
+                stall.end = now;
+                stall.message = dispatchMessage;
+                stall.delayedTicks = 0;
+                stall.maxTickLateness = 0;
+                stallCount++;
+            }
+
+            dispatchStart = -1;
+            dispatchMessage = null;
+        }
+    }
+
+    /**
+     * Records the dispatch of a tick and links it to the stalls that ended after it was due
+     * @param slotTime the clock time the tick was due
+     * @param dispatchTime the clock time the tick ran
+     */
+    public void onTick(long slotTime, long dispatchTime) {
+        long lateness = dispatchTime - slotTime;
+
+        ticks++;
+        if (lateness > maxTickLateness) {
+            maxTickLateness = lateness;
+        }
+
+        for (long i = stallCount - 1; i >= 0 && i >= stallCount - stalls.length; i--) {
+            Stall stall = stalls[(int) (i % stalls.length)];
+            if (stall.end <= slotTime) {
+                break;
+            }
+
+            stall.delayedTicks++;
+            if (lateness > stall.maxTickLateness) {
+                stall.maxTickLateness = lateness;
+            }
+        }
+    }
+
+    /**
+     * The number of stalls recorded, including those that no longer fit in the log
+     * @return
+     */
+    public long getStallCount() {
+        return stallCount;
+    }
+
+    /**
+     * The number of stalls still in the log
+     * @return
+     */
+    public int getLoggedStalls() {
+        return (int) Math.min(stallCount, stalls.length);
+    }
+
+    /**
+     * A stall in the log, oldest first.  The stall is reused once the log wraps around
+     * @param index from 0 to {@link #getLoggedStalls()}
+     * @return
+     */
+    public Stall getStall(int index) {
+        if (index < 0 || index >= getLoggedStalls()) {
+            throw new IndexOutOfBoundsException("No stall " + index);
+        }
+
+        return stalls[(int) ((stallCount - getLoggedStalls() + index) % stalls.length)];
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * The longest dispatch lateness of any tick
+     * @return nanoseconds
+     */
+    public long getMaxTickLateness() {
+        return maxTickLateness;
+    }
+
+    /**
+     * Writes a summary and then the logged stalls, oldest first, one per line with the start,
+     * duration and the lateness of the delayed ticks in milliseconds
+     * @param out
+     */
+    public void export(Writer out) {
+        PrintWriter writer = new PrintWriter(out);
+
+        writer.printf(Locale.US, "stalls: %d, ticks: %d, max tick lateness: %.3f ms%n",
+                stallCount, ticks, maxTickLateness / 1e6);
+        writer.println("start_ms\tduration_ms\tdelayed_ticks\tmax_tick_lateness_ms\tmessage");
+
+        for (int i = 0; i < getLoggedStalls(); i++) {
+            Stall stall = getStall(i);
+            writer.printf(Locale.US, "%.3f\t%.3f\t%d\t%.3f\t%s%n", stall.getStart() / 1e6,
+                    stall.getDuration() / 1e6, stall.getDelayedTicks(), stall.getMaxTickLateness() / 1e6,
+                    stall.getMessage());
+        }
+
+        writer.flush();
+    }
+}
@@ -1,13 +1,8 @@
 package com.example.beatty.metronome;
 
 import android.animation.ObjectAnimator;
-import android.annotation.TargetApi;
 import android.graphics.Paint;
 import android.graphics.Typeface;
-import android.media.AudioAttributes;
-import android.media.AudioManager;
-import android.media.SoundPool;
-import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.support.v4.content.ContextCompat;
@@ -26,15 +21,21 @@ import android.widget.RelativeLayout;
 import android.widget.SeekBar;
 import android.widget.Spinner;
 import android.widget.TextView;
+import android.widget.Toast;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 /**
- * A Simple single screen metronome
+ * A Simple single screen metronome.  Playback is done by the {@link MetronomeService}, which
+ * keeps playing while the activity is in the background
  */
-public class MetronomeActivity extends AppCompatActivity {
+public class MetronomeActivity extends AppCompatActivity implements EngineFragment.Callbacks, MetronomeEngine.StateListener {
 
     /**
      * Default font size for notes
@@ -46,6 +47,16 @@ public class MetronomeActivity extends AppCompatActivity {
      */
     public static final int NOTES_MARGIN_TOP = 40;
 
+    /**
+     * How often the notes are updated from the engine's beat events, about once a frame
+     */
+    public static final long NOTE_UPDATE_MS = 16;
+
+    /**
+     * How often the notes are updated when the engine asks for a reduced rate
+     */
+    public static final long REDUCED_NOTE_UPDATE_MS = 50;
+
     /**
      * The available time signatures in the dropdown menu
      */
@@ -96,34 +107,15 @@ public class MetronomeActivity extends AppCompatActivity {
     private int beatSubdivision = 1;
 
     /**
-     * A timer that is used to play the beat sounds and update the highlighted notes
-     */
-    private Handler noteTimer;
-
-    /**
-     * Pool used to play the metronome sounds
-     */
-    private SoundPool soundPool;
-
-    /**
-     * The sound to play for the first beat of a measure
-     */
-    private SoundThread.Sound emphasisSound;
-
-    /**
-     * The sound to play for beats that are not the first
+     * The library pattern being played, or -1 when the time signature and subdivision spinners
+     * set the meter
      */
-    private SoundThread.Sound tickSound;
+    private int patternIndex = -1;
 
     /**
-     * Flag to indicate whether the metronome is currenly playing
+     * Plays the beat sounds.  Null until the {@link EngineFragment} has bound to the service
      */
-    private boolean metronomeOn = false;
-
-    /**
-     * The thread used to play sounds so that the UI does not lag
-     */
-    private SoundThread soundThread;
+    private MetronomeEngine engine;
 
     /**
      * The color to use for beat notes
@@ -156,46 +148,59 @@ public class MetronomeActivity extends AppCompatActivity {
     private boolean requestRedraw = false;
 
     /**
-     * The Runnable that is executed on each tick of the {@link #noteTimer}
+     * Highlights the note for each slot played by the {@link #engine}
      */
-    private Runnable noteRunner = new Runnable() {
-        @Override
-        public void run() {
-            if (!metronomeOn) {
-                return;
-            }
+    private final Handler handler = new Handler();
 
-            if (noteIndex != -1) {
-                unhighlightNote(notes.get(noteIndex));
-            }
+    /**
+     * The display's own position in the engine's beat events
+     */
+    private BeatEventRing.Cursor noteCursor;
 
-            noteIndex++;
+    private final BeatEvent noteEvent = new BeatEvent();
 
-            if (noteIndex >= notes.size()) {
-                noteIndex = 0;
-            }
+    /**
+     * Whether {@link #noteRunner} is posted, which is only while the engine is playing
+     */
+    private boolean followingBeats = false;
 
-            if (noteIndex == 0) {
-                anim.setCurrentPlayTime(0);
-                anim.start();
+    /**
+     * How much of the display is updated, as decided by the engine from the lateness of its ticks
+     */
+    private VisualGovernor.Level visualLevel = VisualGovernor.Level.FULL;
 
-                playSound(emphasisSound);
+    /**
+     * Shows the beat events published since the last update.  The display reads the events at
+     * its own pace and only loses old events if it falls behind, so it never holds up the sound.
+     * At a reduced rate only the latest event is shown
+     */
+    private final Runnable noteRunner = new Runnable() {
+        @Override
+        public void run() {
+            if (!engine.isPlaying()) {
+                followBeats(false);
+                return;
             }
 
-            if ((noteIndex) % beatSubdivision == 0) {
-                highlightNote(notes.get(noteIndex));
-                if (noteIndex != 0) playSound(tickSound);
-            } else {
-                highlightSubdivisionNote(notes.get(noteIndex));
+            setVisualLevel(engine.getVisualLevel());
+            boolean reduced = visualLevel == VisualGovernor.Level.REDUCED_RATE;
+
+            boolean polled = false;
+            while (noteCursor.poll(noteEvent)) {
+                polled = true;
+                if (!reduced) showSlot(noteEvent.getPosition(), noteEvent.getAccent());
             }
 
+            if (reduced && polled) {
+                showSlot(noteEvent.getPosition(), noteEvent.getAccent());
+            }
 
-            scheduleNextNote();
+            handler.postDelayed(this, reduced ? REDUCED_NOTE_UPDATE_MS : NOTE_UPDATE_MS);
         }
     };
 
     /**
-     * Initialize and start the sound thread
+     * Sets up the controls and binds to the engine through a retained {@link EngineFragment}
      * @param savedInstanceState
      */
     @Override
@@ -222,60 +227,204 @@ public class MetronomeActivity extends AppCompatActivity {
         timeSignature = TimeSignature.COMMON_TIME;
         notes = new ArrayList<>();
 
-        noteTimer = new Handler();
-
         setupTimeSignatureSpinner();
         setupSubdivisionSpinner();
-
-        // handlers must be created first
+        setupPatternSpinner();
         setupBPMSeekBar();
 
-        createOldSoundPool();
-
-        soundThread = new SoundThread(soundPool);
-        soundThread.setRunning(true);
-        soundThread.start();
+        // the fragment is already bound if the activity was recreated
+        MetronomeEngine connected = EngineFragment.obtain(this).getEngine();
+        if (connected != null) {
+            onEngineConnected(connected);
+        }
     }
 
     /**
-     * Loads sounds
+     * Shows the settings of the engine, which may be playing already, and starts following it
+     * @param engine
      */
     @Override
-    public void onResume() {
-        super.onResume();
-        Log.d("resume", "resume");
+    public void onEngineConnected(MetronomeEngine engine) {
+        this.engine = engine;
 
-        int soundId = soundPool.load(this, R.raw.kick, 1);
-        tickSound = new SoundThread.Sound(soundId, 0.8f);
-        emphasisSound = new SoundThread.Sound(soundId, 1.0f);
+        Spinner patternSpinner = (Spinner) findViewById(R.id.patternSpinner);
+        patternSpinner.setAdapter(new PatternAdapter(this, engine.getPatternLibrary(), getResources().getString(R.string.pattern_meter)));
+        invalidateOptionsMenu();
+
+        attachEngine();
     }
 
     /**
-     * Stops the metronome and unloads sounds
+     * Follows the engine again after it may have been changed from the notification
      */
     @Override
-    public void onPause() {
-        super.onPause();
-        Log.d("pause", "pause");
-
-        stopMetronome();
+    public void onStart() {
+        super.onStart();
 
-        soundPool.unload(tickSound.getSoundID());
-        soundPool.unload(emphasisSound.getSoundID());
+        if (engine != null) {
+            attachEngine();
+        }
     }
 
     /**
-     * Stops the sound thread
+     * Stops updating the display while the engine keeps playing in the background
      */
+    @Override
+    public void onStop() {
+        super.onStop();
+        Log.d("stop", "stop");
+
+        handler.removeCallbacks(noteRunner);
+        followingBeats = false;
+
+        if (engine != null) {
+            engine.removeStateListener(this);
+            engine.setReady(false);
+        }
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
 
-        soundThread.setRunning(false);
-
         Log.d("destroy", "destroy");
     }
 
+    /**
+     * Keeps the controls in step with changes made to the engine, such as from the notification
+     * @param engine
+     */
+    @Override
+    public void onStateChanged(MetronomeEngine engine) {
+        showEngineSettings();
+    }
+
+    /**
+     * Follows the beat events and state changes of the engine and shows its current settings.
+     * Beats played while the activity was stopped are not shown
+     */
+    private void attachEngine() {
+        noteCursor = engine.newCursor();
+        handler.removeCallbacks(noteRunner);
+        followingBeats = false;
+
+        engine.removeStateListener(this);
+        engine.addStateListener(this);
+
+        // keep the output running so the first beat is on time
+        engine.setReady(true);
+
+        showEngineSettings();
+    }
+
+    /**
+     * Reads the beat events only while the engine is playing, so the main looper is not woken
+     * every frame while stopped.  Beats still unread when playback stops are dropped so they
+     * are not shown on a stopped metronome
+     * @param playing
+     */
+    private void followBeats(boolean playing) {
+        if (playing && !followingBeats) {
+            handler.post(noteRunner);
+            followingBeats = true;
+        } else if (!playing) {
+            handler.removeCallbacks(noteRunner);
+            followingBeats = false;
+            noteCursor.skipAll();
+        }
+    }
+
+    /**
+     * Highlights the note for a slot, removing the highlight from the previous one
+     * @param position the index of the slot within the measure
+     * @param accent the emphasis of the slot
+     */
+    private void showSlot(int position, BeatScheduler.Accent accent) {
+        if (noteIndex != -1 && noteIndex < notes.size()) {
+            unhighlightNote(notes.get(noteIndex));
+        }
+
+        noteIndex = position;
+
+        // the notes are not created until the first layout after the activity is recreated
+        if (noteIndex >= notes.size()) {
+            return;
+        }
+
+        // the spark sweeps the measure, so it restarts on the downbeat wherever the emphasis is
+        if (position == 0) {
+            startSparkAnimation();
+        }
+
+        switch (accent) {
+            case EMPHASIS:
+            case BEAT:
+                highlightNote(notes.get(noteIndex));
+                break;
+            default:
+                if (visualLevel == VisualGovernor.Level.FULL) highlightSubdivisionNote(notes.get(noteIndex));
+        }
+    }
+
+    /**
+     * Drops or restores parts of the display.  The spark is hidden from {@link VisualGovernor.Level#NO_SPARK}
+     * and shown again by the next downbeat once the level is restored
+     * @param level
+     */
+    private void setVisualLevel(VisualGovernor.Level level) {
+        if (level == visualLevel) return;
+
+        Log.d("visual", "level " + visualLevel + " to " + level);
+        visualLevel = level;
+
+        if (level.compareTo(VisualGovernor.Level.NO_SPARK) >= 0) {
+            stopSparkAnimation();
+        }
+    }
+
+    /**
+     * Updates the controls to match the engine without changing it
+     */
+    private void showEngineSettings() {
+        beatsPerMinute = engine.getBeatsPerMinute();
+        ((SeekBar) findViewById(R.id.seek1)).setProgress(beatsPerMinute);
+
+        patternIndex = engine.getPatternIndex();
+        Spinner patternSpinner = (Spinner) findViewById(R.id.patternSpinner);
+        if (patternSpinner.getSelectedItemPosition() != PatternAdapter.positionOf(patternIndex)) {
+            patternSpinner.setSelection(PatternAdapter.positionOf(patternIndex));
+        }
+        setMeterSpinnersEnabled(patternIndex == -1);
+
+        if (!engine.getTimeSignature().equals(timeSignature) || engine.getSubdivision() != beatSubdivision) {
+            timeSignature = engine.getTimeSignature();
+
+            // a pattern may have a meter the spinners do not offer, so they are left alone
+            if (patternIndex == -1) {
+                Spinner signatureSpinner = (Spinner) findViewById(R.id.timeSignatures);
+                signatureSpinner.setSelection(Math.max(0, TIME_SIGNATURES.indexOf(timeSignature)));
+
+                setSubdivisionOptions();
+            }
+
+            beatSubdivision = engine.getSubdivision();
+            int selected = subdivisionAdapter.getPosition(String.valueOf(beatSubdivision));
+            Spinner subdivisionSpinner = (Spinner) findViewById(R.id.subdivisionSpinner);
+            if (patternIndex == -1 && selected >= 0) subdivisionSpinner.setSelection(selected);
+
+            redrawNotes();
+        }
+
+        followBeats(engine.isPlaying());
+
+        if (!engine.isPlaying()) {
+            stopSparkAnimation();
+            unhighlightAllNotes();
+        }
+
+        updateToggleButton();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
@@ -283,15 +432,61 @@ public class MetronomeActivity extends AppCompatActivity {
         return true;
     }
 
+    /**
+     * Silent mode is offered on devices with a vibrator, and the stall log can only be exported
+     * from debug builds
+     */
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        MenuItem silent = menu.findItem(R.id.action_silent);
+        silent.setVisible(engine != null && engine.canVibrate());
+        silent.setChecked(engine != null && engine.isSilent());
+
+        menu.findItem(R.id.action_export_stalls).setVisible(engine != null && engine.getStallMonitor() != null);
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         // Handle action bar item clicks here. The action bar will
         // automatically handle clicks on the Home/Up button, so long
         // as you specify a parent activity in AndroidManifest.xml.
+        if (item.getItemId() == R.id.action_silent) {
+            engine.setSilent(!engine.isSilent());
+            return true;
+        }
+
+        if (item.getItemId() == R.id.action_export_stalls) {
+            exportStallLog();
+            return true;
+        }
 
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Writes the stall log of the engine to the app's external files, where it can be pulled
+     * with adb
+     */
+    private void exportStallLog() {
+        MainThreadStallMonitor monitor = engine.getStallMonitor();
+        File file = new File(getExternalFilesDir(null), "stalls.txt");
+
+        try {
+            Writer out = new FileWriter(file);
+            try {
+                monitor.export(out);
+            } finally {
+                out.close();
+            }
+
+            Toast.makeText(this, getResources().getString(R.string.stalls_exported, file.getPath()), Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Log.w("stall", "unable to export", e);
+            Toast.makeText(this, R.string.stalls_export_failed, Toast.LENGTH_LONG).show();
+        }
+    }
+
     /**
      * Setup the beats per minute seekbar
      */
@@ -305,10 +500,8 @@ public class MetronomeActivity extends AppCompatActivity {
                 beatsPerMinute = progress;
                 setSparkSpeed();
 
-                if (metronomeOn) {
-                    stopMetronome();
-                    startMetronome();
-                }
+                // the engine changes tempo from the next note without restarting
+                if (engine != null) engine.setBeatsPerMinute(Math.max(1, beatsPerMinute));
             }
 
             @Override
@@ -335,11 +528,17 @@ public class MetronomeActivity extends AppCompatActivity {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
                 Log.d("sig", "position: " + position + " signature: " + TIME_SIGNATURES.get(position));
+                if (patternIndex != -1) return;
+
+                boolean changed = !TIME_SIGNATURES.get(position).equals(timeSignature);
                 timeSignature = TIME_SIGNATURES.get(position);
                 setSubdivisionOptions();
                 redrawNotes();
 
-                if (metronomeOn) {
+                if (engine == null) return;
+
+                engine.setMeter(timeSignature, beatSubdivision);
+                if (changed && engine.isPlaying()) {
                     stopMetronome();
                     startMetronome();
                 }
@@ -364,10 +563,16 @@ public class MetronomeActivity extends AppCompatActivity {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
                 Log.d("subd", "position: " + position + " subdivision: " + subdivisionAdapter.getItem(position));
+                if (patternIndex != -1) return;
+
+                int previous = beatSubdivision;
                 setSubdivision(position);
                 redrawNotes();
 
-                if (metronomeOn) {
+                if (engine == null) return;
+
+                engine.setMeter(timeSignature, beatSubdivision);
+                if (previous != beatSubdivision && engine.isPlaying()) {
                     stopMetronome();
                     startMetronome();
                 }
@@ -381,23 +586,81 @@ public class MetronomeActivity extends AppCompatActivity {
         setSubdivisionOptions();
     }
 
+    /**
+     * The pattern spinner chooses between the meter of the other spinners and the patterns of
+     * the engine's library.  Its adapter is set once the engine is connected
+     */
+    private void setupPatternSpinner() {
+        Spinner spinner = (Spinner) findViewById(R.id.patternSpinner);
+
+        spinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                int index = PatternAdapter.patternIndexAt(position);
+                Log.d("pattern", "position: " + position + " pattern: " + index);
+                if (engine == null || index == patternIndex) return;
+
+                patternIndex = index;
+                setMeterSpinnersEnabled(index == -1);
+
+                if (index == -1) {
+                    // back to the meter shown by the spinners, as the pattern replaced both values
+                    Spinner signatureSpinner = (Spinner) findViewById(R.id.timeSignatures);
+                    timeSignature = TIME_SIGNATURES.get(signatureSpinner.getSelectedItemPosition());
+                    Spinner subdivisionSpinner = (Spinner) findViewById(R.id.subdivisionSpinner);
+                    setSubdivision(subdivisionSpinner.getSelectedItemPosition());
+                    setSubdivisionOptions();
+                    engine.setMeter(timeSignature, beatSubdivision);
+                } else {
+                    engine.setPattern(index);
+                }
+
+                redrawNotes();
+                if (engine.isPlaying()) {
+                    stopMetronome();
+                    startMetronome();
+                }
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
+    }
+
+    /**
+     * The time signature and subdivision can only be chosen while no pattern is playing
+     * @param enabled
+     */
+    private void setMeterSpinnersEnabled(boolean enabled) {
+        findViewById(R.id.timeSignatures).setEnabled(enabled);
+        findViewById(R.id.subdivisionSpinner).setEnabled(enabled);
+    }
+
     /**
      * Sets the options in the subdivision spinner based on the current time signature
      */
     private void setSubdivisionOptions() {
         subdivisionAdapter.clear();
 
+        // tuplets are offered where they can still be drawn with a sixteenth note or longer
         if (timeSignature.getBeatType() <= 16) subdivisionAdapter.add("1");
         if (timeSignature.getBeatType() <= 8) subdivisionAdapter.add("2");
+        if (timeSignature.getBeatType() <= 8) subdivisionAdapter.add("3");
         if (timeSignature.getBeatType() <= 4) subdivisionAdapter.add("4");
+        if (timeSignature.getBeatType() <= 4) subdivisionAdapter.add("5");
+        if (timeSignature.getBeatType() <= 4) subdivisionAdapter.add("6");
+        if (timeSignature.getBeatType() <= 4) subdivisionAdapter.add("7");
 
         Spinner spinner = (Spinner) findViewById(R.id.subdivisionSpinner);
 
-        // find the last selected index
-        int pos = spinner.getSelectedItemPosition();
-        if (pos >= subdivisionAdapter.getCount()) {
-            pos = subdivisionAdapter.getCount() - 1;
-            spinner.setSelection(pos);
+        // keep the current subdivision if it is offered, otherwise use the next smaller one
+        int pos = subdivisionAdapter.getCount() - 1;
+        while (pos > 0 && Integer.parseInt(subdivisionAdapter.getItem(pos).toString()) > beatSubdivision) {
+            pos--;
+        }
+        spinner.setSelection(pos);
+        if (Integer.parseInt(subdivisionAdapter.getItem(pos).toString()) != beatSubdivision) {
             setSubdivision(pos);
         }
 
@@ -415,70 +678,33 @@ public class MetronomeActivity extends AppCompatActivity {
     }
 
     /**
-     * The delay that is used to get the correct beats per minute
-     * @return
-     */
-    private long soundDelayMilliSec() {
-        return (long)((1000f * 60) / beatsPerMinute);
-    }
-
-    /**
-     * Graphics may update more frequently than sound depending on the beatType and beatsPerMeasure
-     * @return
-     */
-    private long graphicDelayMilliSec() {
-        float freq = 1f/beatSubdivision;
-        return (long)(soundDelayMilliSec() * freq);
-    }
-
-    /**
-     * Schedules the next callback to the {@link #noteRunner}
-     * @param immediate true if no delay or uses {@link #graphicDelayMilliSec()}
-     */
-    private void scheduleNextNote(boolean immediate) {
-        long delay = immediate ? 0 : graphicDelayMilliSec();
-
-        noteTimer.removeCallbacks(noteRunner);
-        noteTimer.postDelayed(noteRunner, delay);
-    }
-
-    /**
-     * Schedules a non-immediate next note
-     */
-    private void scheduleNextNote() {
-        scheduleNextNote(false);
-    }
-
-    /**
-     * Starts the metronome and resets the note played to the beginning
+     * Starts the metronome and resets the note played to the beginning.  The spark starts with
+     * the first beat, which is a short lead time after the start
      */
     private void startMetronome() {
         noteIndex = -1;
 
-        scheduleNextNote(true);
-
-        startSparkAnimation();
-
-        metronomeOn = true;
+        engine.start();
     }
 
     /**
      * Stops the metronome and disables animation
      */
     private void stopMetronome() {
-        noteTimer.removeCallbacks(noteRunner);
+        engine.stop();
+        followBeats(false);
 
         stopSparkAnimation();
 
         unhighlightAllNotes();
-
-        metronomeOn = false;
     }
 
     /**
      * Starts and displays the spark at the beginning
      */
     private void startSparkAnimation() {
+        if (anim == null || visualLevel.compareTo(VisualGovernor.Level.NO_SPARK) >= 0) return;
+
         anim.setCurrentPlayTime(0);
         anim.start();
 
@@ -505,7 +731,9 @@ public class MetronomeActivity extends AppCompatActivity {
     }
 
     /**
-     * Gets the note string to use based on type and subdivision
+     * Gets the note string to use based on type and subdivision.  Tuplets use the note they
+     * are written with: triplets the next shorter note, and quintuplets to septuplets of a
+     * quarter note use sixteenths
      * @param type the type of beat
      * @param subdivisions the number of subdivisions of that beat
      * @return
@@ -515,13 +743,17 @@ public class MetronomeActivity extends AppCompatActivity {
             case 4:
                 switch (subdivisions) {
                     case 4:
+                    case 5:
+                    case 6:
+                    case 7:
                         return getResources().getString(R.string.sixteenth_note);
                     case 2:
+                    case 3:
                         return getResources().getString(R.string.eigth_note);
                 }
                 return getResources().getString(R.string.quarter_note);
             case 8:
-                if (subdivisions == 2) return getResources().getString(R.string.sixteenth_note);
+                if (subdivisions == 2 || subdivisions == 3) return getResources().getString(R.string.sixteenth_note);
                 return getResources().getString(R.string.eigth_note);
             case 16:
                 return getResources().getString(R.string.sixteenth_note);
@@ -650,54 +882,30 @@ public class MetronomeActivity extends AppCompatActivity {
         return view;
     }
 
-    /**
-     * New style of sound pool creation
-     */
-    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
-    private void createNewSoundPool() {
-        AudioAttributes att = new AudioAttributes.Builder()
-                .setUsage(AudioAttributes.USAGE_MEDIA)
-                .build();
-
-        soundPool = new SoundPool.Builder()
-                .setAudioAttributes(att)
-                .build();
-    }
-
-    /**
-     * Old style of sound pool creation
-     */
-    private void createOldSoundPool() {
-        soundPool = new SoundPool(5, AudioManager.STREAM_MUSIC, 0);
-        soundPool.setOnLoadCompleteListener(new SoundPool.OnLoadCompleteListener() {
-            @Override
-            public void onLoadComplete(SoundPool soundPool, int sampleId, int status) {
-
-            }
-        });
-    }
-
-    /**
-     * Adds a sound to the queue used by the sound thread
-     * @param sound
-     */
-    public void playSound(SoundThread.Sound sound) {
-        soundThread.addSound(sound);
-    }
-
     /**
      * Toggles the state of the metronome and sets the button text
      * @param view
      */
     public void toggleActive(View view) {
-        Button toggleButton = (Button)findViewById(R.id.toggle_button);
-        if (!metronomeOn) {
+        if (engine == null) return;
+
+        if (!engine.isPlaying()) {
             startMetronome();
-            toggleButton.setText(getResources().getString(R.string.button_stop));
         } else {
             stopMetronome();
-            toggleButton.setText(getResources().getString(R.string.button_start));
         }
+
+        updateToggleButton();
+    }
+
+    /**
+     * Sets the button text to match the state of the engine
+     */
+    private void updateToggleButton() {
+        Button toggleButton = (Button)findViewById(R.id.toggle_button);
+        boolean playing = engine != null && engine.isPlaying();
+        int text = playing ? R.string.button_stop : R.string.button_start;
+        toggleButton.setText(getResources().getString(text));
     }
 
     /**
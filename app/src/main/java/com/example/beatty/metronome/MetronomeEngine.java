@@ -0,0 +1,466 @@
+package com.example.beatty.metronome;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.res.Resources;
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.media.SoundPool;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Vibrator;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Owns the sound thread, the loaded sounds and the beat scheduler so that playback can
+ * outlive the activity that displays it.  Hosted by the {@link MetronomeService} and must be
+ * used from the main thread.
+ *
+ * Each slot is published once to a {@link BeatEventRing}; the sound thread and any display
+ * read the events from it through their own cursors
+ */
+public class MetronomeEngine {
+
+    /**
+     * The time from a start until the first beat, which lets the output get ready so the first
+     * beat is on time
+     */
+    public static final long START_LEAD_NANOS = 100L * 1000 * 1000;
+
+    /**
+     * Told when the engine starts, stops or changes its settings
+     */
+    public interface StateListener {
+        void onStateChanged(MetronomeEngine engine);
+    }
+
+    /**
+     * Pool used to play the metronome sounds when samples can not be decoded
+     */
+    private SoundPool soundPool;
+
+    /**
+     * Samples resampled to the native output rate, used instead of {@link #soundPool} when
+     * the device can decode them
+     */
+    private SampleCache sampleCache;
+
+    /**
+     * The thread used to play sounds so that the UI does not lag
+     */
+    private SoundThread soundThread;
+
+    /**
+     * Decides when to play the beat sounds
+     */
+    private final BeatScheduler scheduler;
+
+    /**
+     * The slots published by the scheduler for the sound thread and the display
+     */
+    private final BeatEventRing events = new BeatEventRing();
+
+    /**
+     * The bundled patterns, or null if the library could not be opened
+     */
+    private PatternLibrary patternLibrary;
+
+    /**
+     * The index of the library pattern being played, or -1 for a plain meter
+     */
+    private int patternIndex = -1;
+
+    /**
+     * Vibrates the beats in silent mode, or null if the device has no vibrator
+     */
+    private HapticThread hapticThread;
+
+    /**
+     * Lowers the detail of the display when the ticks are late
+     */
+    private final VisualGovernor visualGovernor = new VisualGovernor();
+
+    /**
+     * The scheduler's count of missed slots at the previous tick
+     */
+    private long missedSlots;
+
+    /**
+     * Times the messages of the main looper in debug builds, null otherwise
+     */
+    private MainThreadStallMonitor stallMonitor;
+
+    /**
+     * Whether a client is showing the engine and may start it at any moment
+     */
+    private boolean ready;
+
+    private final List<StateListener> stateListeners = new ArrayList<>();
+
+    private final BeatScheduler.Listener publisher = new BeatScheduler.Listener() {
+        @Override
+        public void onSlot(int position, BeatScheduler.Accent accent, long slotTime) {
+            events.publish(position, accent, slotTime);
+
+            long now = Clock.SYSTEM.nanoTime();
+            visualGovernor.onTick(slotTime, now, scheduler.getMissedSlots() - missedSlots);
+            missedSlots = scheduler.getMissedSlots();
+
+            if (stallMonitor != null) {
+                stallMonitor.onTick(slotTime, now);
+            }
+        }
+    };
+
+    /**
+     * Loads the sounds and starts the sound thread
+     * @param context the application context, which is kept for the life of the engine
+     */
+    public MetronomeEngine(Context context) {
+        setupSoundThread(context);
+        openPatternLibrary(context);
+
+        if (BuildConfig.DEBUG) {
+            stallMonitor = new MainThreadStallMonitor();
+            stallMonitor.install(Looper.getMainLooper());
+        }
+
+        Handler handler = new Handler(Looper.getMainLooper());
+        scheduler = new BeatScheduler(Clock.SYSTEM, new HandlerTickExecutor(handler, Clock.SYSTEM), publisher);
+
+        setupHapticThread(context);
+    }
+
+    /**
+     * Creates a cursor for reading the slots played from now on.  Each reader should have its
+     * own cursor, and a reader that falls behind loses the oldest slots rather than holding
+     * up the sound
+     * @return
+     */
+    public BeatEventRing.Cursor newCursor() {
+        return events.newCursor();
+    }
+
+    public void addStateListener(StateListener stateListener) {
+        stateListeners.add(stateListener);
+    }
+
+    public void removeStateListener(StateListener stateListener) {
+        stateListeners.remove(stateListener);
+    }
+
+    /**
+     * Starts playing from the beginning of a measure.  The first beat is due a short lead
+     * time later, by which time the output is running
+     */
+    public void start() {
+        soundThread.setWarm(true);
+        soundThread.getLatencyStats().markStart(events.getPublished() + 1);
+
+        scheduler.start(START_LEAD_NANOS);
+        missedSlots = 0;
+        visualGovernor.restart();
+        notifyStateChanged();
+    }
+
+    /**
+     * Stops playing
+     */
+    public void stop() {
+        boolean wasPlaying = scheduler.isRunning();
+        scheduler.stop();
+
+        if (hapticThread != null) {
+            hapticThread.cancel();
+        }
+
+        soundThread.setWarm(ready);
+
+        if (wasPlaying) {
+            Log.d("audio", "latency " + soundThread.getLatencyStats());
+            notifyStateChanged();
+        }
+    }
+
+    public boolean isPlaying() {
+        return scheduler.isRunning();
+    }
+
+    /**
+     * Tells the engine whether it is likely to be started soon, such as while it is shown.  The
+     * output is kept running with silence while ready or playing, and released otherwise
+     * @param ready
+     */
+    public void setReady(boolean ready) {
+        this.ready = ready;
+        soundThread.setWarm(ready || isPlaying());
+    }
+
+    /**
+     * The latency of the first beat and of the beats after it since the last start
+     * @return
+     */
+    public LatencyStats getLatencyStats() {
+        return soundThread.getLatencyStats();
+    }
+
+    public void setBeatsPerMinute(int beatsPerMinute) {
+        if (beatsPerMinute == scheduler.getBeatsPerMinute()) return;
+
+        scheduler.setBeatsPerMinute(beatsPerMinute);
+        updateHapticBar();
+        notifyStateChanged();
+    }
+
+    public int getBeatsPerMinute() {
+        return scheduler.getBeatsPerMinute();
+    }
+
+    /**
+     * Plays a plain meter instead of any library pattern
+     * @param timeSignature
+     * @param subdivision
+     */
+    public void setMeter(TimeSignature timeSignature, int subdivision) {
+        if (patternIndex == -1 && timeSignature.equals(scheduler.getTimeSignature())
+                && subdivision == scheduler.getSubdivision()) return;
+
+        patternIndex = -1;
+        scheduler.setMeter(timeSignature, subdivision);
+        updateHapticBar();
+        notifyStateChanged();
+    }
+
+    /**
+     * Plays a pattern from the library.  Only this pattern is decoded
+     * @param index the index of the pattern in {@link #getPatternLibrary()}
+     */
+    public void setPattern(int index) {
+        if (index == patternIndex) return;
+
+        scheduler.setPattern(patternLibrary.load(index));
+        patternIndex = index;
+        updateHapticBar();
+        notifyStateChanged();
+    }
+
+    /**
+     * The index of the library pattern being played
+     * @return the index or -1 for a plain meter
+     */
+    public int getPatternIndex() {
+        return patternIndex;
+    }
+
+    /**
+     * Whether the beats can be felt in silent mode
+     * @return
+     */
+    public boolean canVibrate() {
+        return hapticThread != null;
+    }
+
+    /**
+     * Switches between sounding the beats and vibrating them
+     * @param silent true to vibrate instead of playing sounds
+     */
+    public void setSilent(boolean silent) {
+        if (silent == isSilent()) return;
+
+        soundThread.setMuted(silent);
+        if (hapticThread != null) {
+            hapticThread.setEnabled(silent);
+        }
+        notifyStateChanged();
+    }
+
+    public boolean isSilent() {
+        return soundThread.isMuted();
+    }
+
+    /**
+     * How much of the display should be updated.  The display is the first thing given up
+     * when the ticks start running late
+     * @return
+     */
+    public VisualGovernor.Level getVisualLevel() {
+        return visualGovernor.getLevel();
+    }
+
+    /**
+     * The number of times the visual level has changed
+     * @return
+     */
+    public long getVisualLevelChanges() {
+        return visualGovernor.getLevelChanges();
+    }
+
+    /**
+     * The monitor of main thread stalls
+     * @return the monitor, or null if this is not a debug build
+     */
+    public MainThreadStallMonitor getStallMonitor() {
+        return stallMonitor;
+    }
+
+    /**
+     * The bundled patterns
+     * @return the library or null if it could not be opened
+     */
+    public PatternLibrary getPatternLibrary() {
+        return patternLibrary;
+    }
+
+    public TimeSignature getTimeSignature() {
+        return scheduler.getTimeSignature();
+    }
+
+    public int getSubdivision() {
+        return scheduler.getSubdivision();
+    }
+
+    /**
+     * Stops playback, shuts down the sound thread and frees the sounds.  The engine can not
+     * be used afterwards
+     */
+    public void release() {
+        stateListeners.clear();
+        ready = false;
+        stop();
+
+        soundThread.shutdown();
+
+        if (hapticThread != null) {
+            hapticThread.shutdown();
+        }
+
+        if (stallMonitor != null) {
+            stallMonitor.uninstall();
+        }
+
+        if (soundPool != null) {
+            soundPool.release();
+        }
+
+        Log.d("engine", "released");
+    }
+
+    /**
+     * Creates and starts the sound thread.  Samples are decoded and resampled to the native
+     * output rate when possible, otherwise or if the track can not be opened the sounds are
+     * played through a SoundPool
+     */
+    private void setupSoundThread(Context context) {
+        int soundId = R.raw.kick;
+
+        if (SampleDecoder.isSupported()) {
+            NativeAudioParams audioParams = NativeAudioParams.query(context);
+            sampleCache = new SampleCache(audioParams.getSampleRate());
+
+            try {
+                sampleCache.load(context, R.raw.kick);
+
+                AudioTrack track = TrackSoundThread.createTrack(audioParams);
+                if (track != null) {
+                    soundThread = new TrackSoundThread(sampleCache, audioParams, track, events);
+                } else {
+                    Log.w("sound", "unable to open a track, using SoundPool");
+                    sampleCache = null;
+                }
+            } catch (IOException e) {
+                Log.w("sound", "unable to decode samples, using SoundPool", e);
+                sampleCache = null;
+            }
+        }
+
+        if (soundThread == null) {
+            createOldSoundPool();
+            soundId = soundPool.load(context, R.raw.kick, 1);
+            soundThread = new SoundThread(soundPool, events);
+        }
+
+        soundThread.setSound(BeatScheduler.Accent.BEAT, new SoundThread.Sound(soundId, 0.8f));
+        soundThread.setSound(BeatScheduler.Accent.EMPHASIS, new SoundThread.Sound(soundId, 1.0f));
+
+        soundThread.setRunning(true);
+        soundThread.start();
+    }
+
+    /**
+     * Creates and starts the thread that vibrates the beats, if the device can
+     */
+    private void setupHapticThread(Context context) {
+        Vibrator vibrator = (Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE);
+        if (vibrator == null || !vibrator.hasVibrator()) {
+            return;
+        }
+
+        hapticThread = new HapticThread(events, new VibratorHapticOutput(vibrator), Clock.SYSTEM);
+        updateHapticBar();
+
+        hapticThread.setRunning(true);
+        hapticThread.start();
+    }
+
+    /**
+     * Compiles the measure that is vibrated, which is done for each change of tempo or pattern
+     * rather than for each beat
+     */
+    private void updateHapticBar() {
+        if (hapticThread != null) {
+            hapticThread.setBar(HapticBar.compile(scheduler.getPattern(), scheduler.getBeatsPerMinute()));
+        }
+    }
+
+    /**
+     * Maps the bundled pattern library.  Nothing is decoded until a pattern is chosen, so the
+     * size of the library does not affect startup
+     */
+    private void openPatternLibrary(Context context) {
+        try {
+            patternLibrary = PatternLibrary.open(context, R.raw.patterns);
+            Log.d("engine", "patterns: " + patternLibrary.size());
+        } catch (IOException | Resources.NotFoundException e) {
+            Log.w("engine", "unable to open pattern library", e);
+        }
+    }
+
+    /**
+     * New style of sound pool creation
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void createNewSoundPool() {
+        AudioAttributes att = new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_MEDIA)
+                .build();
+
+        soundPool = new SoundPool.Builder()
+                .setAudioAttributes(att)
+                .build();
+    }
+
+    /**
+     * Old style of sound pool creation
+     */
+    private void createOldSoundPool() {
+        soundPool = new SoundPool(5, AudioManager.STREAM_MUSIC, 0);
+        soundPool.setOnLoadCompleteListener(new SoundPool.OnLoadCompleteListener() {
+            @Override
+            public void onLoadComplete(SoundPool soundPool, int sampleId, int status) {
+
+            }
+        });
+    }
+
+    private void notifyStateChanged() {
+        for (StateListener stateListener : new ArrayList<>(stateListeners)) {
+            stateListener.onStateChanged(this);
+        }
+    }
+}
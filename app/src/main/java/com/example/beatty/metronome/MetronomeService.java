@@ -0,0 +1,192 @@
+package com.example.beatty.metronome;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Binder;
+import android.os.IBinder;
+import android.os.PowerManager;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+
+/**
+ * Hosts the {@link MetronomeEngine} so that it keeps playing when the activity is in the
+ * background or the screen is off.  While playing the service runs in the foreground with a
+ * notification for starting, stopping and changing the tempo, and holds a partial wake lock
+ * so the CPU stays awake for the ticks
+ */
+public class MetronomeService extends Service implements MetronomeEngine.StateListener {
+
+    public static final String ACTION_TOGGLE = "com.example.beatty.metronome.action.TOGGLE";
+    public static final String ACTION_SLOWER = "com.example.beatty.metronome.action.SLOWER";
+    public static final String ACTION_FASTER = "com.example.beatty.metronome.action.FASTER";
+    public static final String ACTION_DISMISS = "com.example.beatty.metronome.action.DISMISS";
+
+    /**
+     * The change in beats per minute for the notification buttons
+     */
+    public static final int BPM_STEP = 1;
+
+    /**
+     * Matches the maximum of the beats per minute seekbar
+     */
+    public static final int MAX_BPM = 300;
+
+    private static final int NOTIFICATION_ID = 1;
+
+    /**
+     * Gives bound clients in this process direct access to the engine
+     */
+    public class LocalBinder extends Binder {
+        public MetronomeEngine getEngine() {
+            return engine;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+
+    private MetronomeEngine engine;
+
+    private PowerManager.WakeLock wakeLock;
+
+    /**
+     * Whether the service is currently in the foreground
+     */
+    private boolean foreground = false;
+
+    /**
+     * Whether the notification is showing.  It stays after playback stops until dismissed
+     */
+    private boolean notificationShown = false;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        engine = new MetronomeEngine(getApplicationContext());
+        engine.addStateListener(this);
+
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "metronome:playback");
+        wakeLock.setReferenceCounted(false);
+
+        Log.d("service", "created");
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    /**
+     * Handles the notification buttons
+     */
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        String action = intent != null ? intent.getAction() : null;
+
+        // actions come from the notification, which may outlive an earlier instance
+        if (action != null) {
+            notificationShown = true;
+        }
+
+        if (ACTION_TOGGLE.equals(action)) {
+            if (engine.isPlaying()) {
+                engine.stop();
+            } else {
+                engine.start();
+            }
+        } else if (ACTION_SLOWER.equals(action)) {
+            engine.setBeatsPerMinute(Math.max(1, engine.getBeatsPerMinute() - BPM_STEP));
+        } else if (ACTION_FASTER.equals(action)) {
+            engine.setBeatsPerMinute(Math.min(MAX_BPM, engine.getBeatsPerMinute() + BPM_STEP));
+        } else if (ACTION_DISMISS.equals(action)) {
+            // the service ends once no activity is bound
+            notificationShown = false;
+            stopSelf();
+        }
+
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        engine.release();
+        wakeLock.release();
+
+        NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        manager.cancel(NOTIFICATION_ID);
+
+        Log.d("service", "destroyed");
+    }
+
+    /**
+     * Enters the foreground while playing and leaves it when stopped.  The notification is
+     * left behind when stopped so playback can be restarted from it, and the service stays
+     * started until it is dismissed
+     */
+    @Override
+    public void onStateChanged(MetronomeEngine engine) {
+        if (engine.isPlaying() && !foreground) {
+            // started so the service outlives its bound clients
+            startService(new Intent(this, MetronomeService.class));
+            wakeLock.acquire();
+            startForeground(NOTIFICATION_ID, buildNotification());
+            foreground = true;
+            notificationShown = true;
+        } else if (!engine.isPlaying() && foreground) {
+            wakeLock.release();
+            stopForeground(false);
+            foreground = false;
+        }
+
+        if (notificationShown) {
+            notifyNotification();
+        }
+    }
+
+    private void notifyNotification() {
+        NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        manager.notify(NOTIFICATION_ID, buildNotification());
+    }
+
+    /**
+     * Creates the notification showing the tempo and the transport buttons
+     * @return
+     */
+    private Notification buildNotification() {
+        boolean playing = engine.isPlaying();
+
+        Intent activity = new Intent(this, MetronomeActivity.class);
+        activity.setFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
+
+        String text = getResources().getString(R.string.notification_text,
+                engine.getBeatsPerMinute(), engine.getTimeSignature());
+
+        return new NotificationCompat.Builder(this)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(getResources().getString(R.string.app_name))
+                .setContentText(text)
+                .setContentIntent(PendingIntent.getActivity(this, 0, activity, 0))
+                .setOngoing(playing)
+                .setShowWhen(false)
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
+                .setDeleteIntent(actionIntent(ACTION_DISMISS))
+                .addAction(android.R.drawable.ic_media_rew, getResources().getString(R.string.notification_slower), actionIntent(ACTION_SLOWER))
+                .addAction(playing ? android.R.drawable.ic_media_pause : android.R.drawable.ic_media_play,
+                        getResources().getString(playing ? R.string.button_stop : R.string.button_start), actionIntent(ACTION_TOGGLE))
+                .addAction(android.R.drawable.ic_media_ff, getResources().getString(R.string.notification_faster), actionIntent(ACTION_FASTER))
+                .build();
+    }
+
+    private PendingIntent actionIntent(String action) {
+        Intent intent = new Intent(this, MetronomeService.class);
+        intent.setAction(action);
+        return PendingIntent.getService(this, 0, intent, 0);
+    }
+}
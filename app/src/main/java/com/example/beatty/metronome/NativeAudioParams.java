@@ -0,0 +1,95 @@
+package com.example.beatty.metronome;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.media.AudioManager;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * The output sample rate and buffer size preferred by the device.  Audio that matches both can
+ * use the low latency output path instead of going through the platform resampler
+ */
+public class NativeAudioParams {
+
+    /**
+     * Sample rate used when the device does not report one
+     */
+    public static final int DEFAULT_SAMPLE_RATE = 44100;
+
+    /**
+     * Buffer size used when the device does not report one
+     */
+    public static final int DEFAULT_FRAMES_PER_BUFFER = 256;
+
+    private final int sampleRate;
+    private final int framesPerBuffer;
+
+    public NativeAudioParams(int sampleRate, int framesPerBuffer) {
+        this.sampleRate = sampleRate;
+        this.framesPerBuffer = framesPerBuffer;
+    }
+
+    /**
+     * Reads the native output parameters from the AudioManager, using the defaults on
+     * devices that do not provide them
+     * @param context
+     * @return
+     */
+    public static NativeAudioParams query(Context context) {
+        NativeAudioParams params = null;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+            params = queryProperties(audioManager);
+        }
+
+        if (params == null) {
+            params = new NativeAudioParams(DEFAULT_SAMPLE_RATE, DEFAULT_FRAMES_PER_BUFFER);
+        }
+
+        Log.d("audio", "native rate: " + params.sampleRate + " frames per buffer: " + params.framesPerBuffer);
+        return params;
+    }
+
+    /**
+     * Reads the output properties, which are only available from API 17
+     * @param audioManager
+     * @return the parameters or null if they could not be read
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private static NativeAudioParams queryProperties(AudioManager audioManager) {
+        String rate = audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE);
+        String frames = audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_FRAMES_PER_BUFFER);
+
+        try {
+            int sampleRate = rate == null ? DEFAULT_SAMPLE_RATE : Integer.parseInt(rate);
+            int framesPerBuffer = frames == null ? DEFAULT_FRAMES_PER_BUFFER : Integer.parseInt(frames);
+            if (sampleRate <= 0 || framesPerBuffer <= 0) return null;
+
+            return new NativeAudioParams(sampleRate, framesPerBuffer);
+        } catch (NumberFormatException e) {
+            Log.w("audio", "unreadable output properties: " + rate + ", " + frames);
+            return null;
+        }
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getFramesPerBuffer() {
+        return framesPerBuffer;
+    }
+
+    /**
+     * Rounds a frame count up to a whole number of native buffers, with at least two buffers
+     * so one can be filled while the other plays
+     * @param minFrames the smallest acceptable number of frames
+     * @return
+     */
+    public int roundToBuffers(int minFrames) {
+        int buffers = (minFrames + framesPerBuffer - 1) / framesPerBuffer;
+        return Math.max(2, buffers) * framesPerBuffer;
+    }
+}
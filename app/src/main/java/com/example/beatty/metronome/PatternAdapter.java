@@ -0,0 +1,83 @@
+package com.example.beatty.metronome;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+/**
+ * Lists the patterns of a {@link PatternLibrary} for a spinner, after an entry for playing the
+ * plain meter.  Names are decoded only for the rows being shown, so the library can be large
+ */
+public class PatternAdapter extends BaseAdapter {
+
+    private final LayoutInflater inflater;
+    private final PatternLibrary library;
+    private final String meterName;
+
+    /**
+     * @param context
+     * @param library the patterns, or null to only offer the plain meter
+     * @param meterName the name shown for the plain meter
+     */
+    public PatternAdapter(Context context, PatternLibrary library, String meterName) {
+        this.inflater = LayoutInflater.from(context);
+        this.library = library;
+        this.meterName = meterName;
+    }
+
+    @Override
+    public int getCount() {
+        return library != null ? library.size() + 1 : 1;
+    }
+
+    /**
+     * @param position
+     * @return the name of the pattern
+     */
+    @Override
+    public String getItem(int position) {
+        return position == 0 ? meterName : library.getName(position - 1);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    /**
+     * The position of a library pattern
+     * @param patternIndex the index in the library, or -1 for the plain meter
+     * @return
+     */
+    public static int positionOf(int patternIndex) {
+        return patternIndex + 1;
+    }
+
+    /**
+     * The library pattern at a position
+     * @param position
+     * @return the index in the library, or -1 for the plain meter
+     */
+    public static int patternIndexAt(int position) {
+        return position - 1;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        return bindView(position, convertView, parent, android.R.layout.simple_spinner_item);
+    }
+
+    @Override
+    public View getDropDownView(int position, View convertView, ViewGroup parent) {
+        return bindView(position, convertView, parent, android.R.layout.simple_spinner_dropdown_item);
+    }
+
+    private View bindView(int position, View convertView, ViewGroup parent, int layout) {
+        TextView view = (TextView) (convertView != null ? convertView : inflater.inflate(layout, parent, false));
+        view.setText(getItem(position));
+        return view;
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.beatty.metronome;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A read only library of rhythm patterns in a compact binary file.  The file is memory mapped
+ * and nothing is decoded up front, so opening a library costs the same however many patterns
+ * it holds; a pattern is only decoded into a {@link RhythmPattern} when it is loaded.
+ *
+ * The file starts with a header of three big endian ints: {@link #MAGIC}, {@link #VERSION} and
+ * the number of patterns.  Then comes the index, one int per pattern holding the offset of its
+ * record from the start of the file.  Each record is a sequence of unsigned varints (7 bits
+ * per byte, low bits first, high bit set on all but the last byte):
+ * <ul>
+ *     <li>the length of the name in bytes, followed by the name in UTF-8</li>
+ *     <li>beats per measure, beat type and subdivision</li>
+ *     <li>the number of slots that are not subdivisions, followed for each of them by the
+ *     distance from the previous such slot shifted left by two, or'd with the ordinal of its
+ *     {@link BeatScheduler.Accent}</li>
+ * </ul>
+ * Slots that are not listed are subdivisions.
+ *
+ * Libraries are written by the PatternLibraryWriter of the unit tests, see BundledPatterns
+ */
+public class PatternLibrary {
+
+    /**
+     * "BTPL"
+     */
+    public static final int MAGIC = 0x4254504c;
+
+    public static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 12;
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final BeatScheduler.Accent[] ACCENTS = BeatScheduler.Accent.values();
+
+    private final ByteBuffer buffer;
+    private final int count;
+
+    /**
+     * Reads the library from a buffer, which is usually mapped from a file
+     * @param buffer the whole library, starting at position 0
+     * @throws IOException if the buffer does not hold a library of this version
+     */
+    public PatternLibrary(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a pattern library");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported pattern library version " + buffer.getInt(4));
+        }
+
+        count = buffer.getInt(8);
+        if (count < 0 || HEADER_SIZE + 4L * count > buffer.limit()) {
+            throw new IOException("Truncated pattern library");
+        }
+    }
+
+    /**
+     * Maps a library stored in a raw resource.  The resource must not be compressed in the
+     * package, which is why the library extension is listed in the aapt noCompress option
+     * @param context
+     * @param resId
+     * @return
+     * @throws IOException
+     */
+    public static PatternLibrary open(Context context, int resId) throws IOException {
+        AssetFileDescriptor fd = context.getResources().openRawResourceFd(resId);
+        FileInputStream in = fd.createInputStream();
+
+        try {
+            // the mapping stays valid after the file is closed
+            FileChannel channel = in.getChannel();
+            return new PatternLibrary(channel.map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength()));
+        } finally {
+            in.close();
+            fd.close();
+        }
+    }
+
+    /**
+     * The number of patterns in the library
+     * @return
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Decodes only the name of a pattern
+     * @param index
+     * @return
+     */
+    public String getName(int index) {
+        ByteBuffer record = record(index);
+        return readName(record);
+    }
+
+    /**
+     * Decodes a pattern
+     * @param index
+     * @return
+     */
+    public RhythmPattern load(int index) {
+        ByteBuffer record = record(index);
+        String name = readName(record);
+
+        TimeSignature timeSignature = new TimeSignature(readVarint(record), readVarint(record));
+        int subdivision = readVarint(record);
+
+        BeatScheduler.Accent[] accents = new BeatScheduler.Accent[timeSignature.getBeatsPerMeasure() * subdivision];
+        Arrays.fill(accents, BeatScheduler.Accent.SUBDIVISION);
+
+        int accented = readVarint(record);
+        int position = 0;
+        for (int i = 0; i < accented; i++) {
+            int value = readVarint(record);
+            position += value >>> 2;
+
+            if (position >= accents.length || (value & 3) >= ACCENTS.length) {
+                throw new IllegalStateException("Corrupt pattern " + index);
+            }
+            accents[position] = ACCENTS[value & 3];
+        }
+
+        return new RhythmPattern(name, timeSignature, subdivision, accents);
+    }
+
+    /**
+     * A view of the buffer positioned at the start of a record, so reads do not disturb
+     * other threads reading the library
+     */
+    private ByteBuffer record(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("No pattern " + index + " of " + count);
+        }
+
+        ByteBuffer record = buffer.duplicate();
+        record.position(buffer.getInt(HEADER_SIZE + 4 * index));
+        return record;
+    }
+
+    private static String readName(ByteBuffer record) {
+        byte[] name = new byte[readVarint(record)];
+        record.get(name);
+        return new String(name, UTF_8);
+    }
+
+    /**
+     * Reads an unsigned varint and advances past it
+     * @param buffer
+     * @return
+     */
+    static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalStateException("Varint is too long");
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.beatty.metronome;
+
+/**
+ * Converts mono 16 bit PCM from one sample rate to another with a windowed sinc filter.  The
+ * rate ratio is reduced to up/down and the filter is split into one branch per phase so each
+ * output sample only needs a single short dot product.
+ */
+public class PolyphaseResampler {
+
+    /**
+     * Number of filter taps used for each output sample
+     */
+    public static final int DEFAULT_TAPS_PER_PHASE = 32;
+
+    /**
+     * Upper bound on the number of precomputed filter branches.  Ratios with a larger
+     * numerator use the nearest branch instead
+     */
+    private static final int MAX_PHASES = 1024;
+
+    /**
+     * Fraction of the Nyquist frequency that is kept, leaving room for the filter roll off
+     */
+    private static final double PASSBAND = 0.95;
+
+    private final int inputRate;
+    private final int outputRate;
+    private final int up;
+    private final int down;
+    private final int taps;
+    private final float[][] branches;
+
+    /**
+     * Creates a resampler with {@link #DEFAULT_TAPS_PER_PHASE} taps
+     * @param inputRate the rate of the samples passed to {@link #process(short[])}
+     * @param outputRate the rate of the returned samples
+     */
+    public PolyphaseResampler(int inputRate, int outputRate) {
+        this(inputRate, outputRate, DEFAULT_TAPS_PER_PHASE);
+    }
+
+    /**
+     * Creates a resampler and precomputes its filter branches
+     * @param inputRate the rate of the samples passed to {@link #process(short[])}
+     * @param outputRate the rate of the returned samples
+     * @param tapsPerPhase the even number of filter taps used for each output sample
+     */
+    public PolyphaseResampler(int inputRate, int outputRate, int tapsPerPhase) {
+        if (inputRate <= 0 || outputRate <= 0) {
+            throw new IllegalArgumentException("Sample rates must be positive: " + inputRate + " -> " + outputRate);
+        }
+        if (tapsPerPhase < 2 || tapsPerPhase % 2 != 0) {
+            throw new IllegalArgumentException("Taps per phase must be even and at least 2: " + tapsPerPhase);
+        }
+
+        int divisor = gcd(inputRate, outputRate);
+        this.inputRate = inputRate;
+        this.outputRate = outputRate;
+        this.up = outputRate / divisor;
+        this.down = inputRate / divisor;
+        this.taps = tapsPerPhase;
+
+        // lower the cutoff when reducing the rate so that the removed band does not alias
+        double cutoff = PASSBAND * Math.min(1.0, (double) outputRate / inputRate);
+
+        int phases = Math.min(up, MAX_PHASES);
+        branches = new float[phases][];
+        for (int p = 0; p < phases; p++) {
+            branches[p] = createBranch((double) p / phases, cutoff);
+        }
+    }
+
+    public int getInputRate() {
+        return inputRate;
+    }
+
+    public int getOutputRate() {
+        return outputRate;
+    }
+
+    /**
+     * The number of samples {@link #process(short[])} returns for an input of the given length
+     * @param inputLength number of input samples
+     * @return
+     */
+    public int outputLength(int inputLength) {
+        return (int) (((long) inputLength * up + down - 1) / down);
+    }
+
+    /**
+     * Resamples a complete sound.  Samples before the start and past the end are treated as silence
+     * @param input mono samples at the input rate
+     * @return mono samples at the output rate
+     */
+    public short[] process(short[] input) {
+        short[] output = new short[outputLength(input.length)];
+        if (up == down) {
+            System.arraycopy(input, 0, output, 0, input.length);
+            return output;
+        }
+
+        int half = taps / 2;
+        for (int n = 0; n < output.length; n++) {
+            long position = (long) n * down;
+            int index = (int) (position / up);
+            int phase = (int) (position % up);
+            float[] branch = branches[(int) ((long) phase * branches.length / up)];
+
+            int first = index - half + 1;
+            float acc = 0;
+            for (int j = 0; j < taps; j++) {
+                int k = first + j;
+                if (k >= 0 && k < input.length) {
+                    acc += input[k] * branch[j];
+                }
+            }
+
+            output[n] = clamp(Math.round(acc));
+        }
+
+        return output;
+    }
+
+    /**
+     * Builds the filter branch for an output sample that falls {@code fraction} of the way
+     * between two input samples.  The branch is normalized to unity gain
+     */
+    private float[] createBranch(double fraction, double cutoff) {
+        float[] branch = new float[taps];
+        int half = taps / 2;
+        double sum = 0;
+
+        for (int j = 0; j < taps; j++) {
+            // distance from the output position to the input sample of this tap
+            double distance = fraction + half - 1 - j;
+            double value = cutoff * sinc(cutoff * distance) * blackman(distance / half);
+            branch[j] = (float) value;
+            sum += value;
+        }
+
+        for (int j = 0; j < taps; j++) {
+            branch[j] /= sum;
+        }
+
+        return branch;
+    }
+
+    private static double sinc(double x) {
+        if (x == 0) return 1;
+        double px = Math.PI * x;
+        return Math.sin(px) / px;
+    }
+
+    /**
+     * Blackman window centered on zero, where x ranges from -1 to 1
+     */
+    private static double blackman(double x) {
+        if (x <= -1 || x >= 1) return 0;
+        return 0.42 + 0.5 * Math.cos(Math.PI * x) + 0.08 * Math.cos(2 * Math.PI * x);
+    }
+
+    private static short clamp(int value) {
+        if (value > Short.MAX_VALUE) return Short.MAX_VALUE;
+        if (value < Short.MIN_VALUE) return Short.MIN_VALUE;
+        return (short) value;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.beatty.metronome;
+
+import java.util.Arrays;
+
+/**
+ * The slots of one measure and the accent given to each.  A plain meter accents the first
+ * slot and every beat; patterns from a {@link PatternLibrary} can accent any slot, and slots
+ * left as subdivisions are not sounded
+ */
+public class RhythmPattern {
+
+    private final String name;
+    private final TimeSignature timeSignature;
+    private final int subdivision;
+    private final BeatScheduler.Accent[] accents;
+
+    /**
+     * Creates a pattern
+     * @param name the name shown for the pattern, or null for a plain meter
+     * @param timeSignature
+     * @param subdivision the number of slots per beat
+     * @param accents the accent of each slot in the measure, which is copied
+     */
+    public RhythmPattern(String name, TimeSignature timeSignature, int subdivision, BeatScheduler.Accent[] accents) {
+        if (subdivision <= 0) {
+            throw new IllegalArgumentException("Subdivision must be positive: " + subdivision);
+        }
+        if (accents.length != timeSignature.getBeatsPerMeasure() * subdivision) {
+            throw new IllegalArgumentException("Expected " + timeSignature.getBeatsPerMeasure() * subdivision
+                    + " accents but got " + accents.length);
+        }
+
+        this.name = name;
+        this.timeSignature = timeSignature;
+        this.subdivision = subdivision;
+        this.accents = accents.clone();
+    }
+
+    /**
+     * The pattern of a plain meter, with the first slot emphasized and the other beats accented
+     * @param timeSignature
+     * @param subdivision the number of slots per beat
+     * @return
+     */
+    public static RhythmPattern of(TimeSignature timeSignature, int subdivision) {
+        if (subdivision <= 0) {
+            throw new IllegalArgumentException("Subdivision must be positive: " + subdivision);
+        }
+
+        BeatScheduler.Accent[] accents = new BeatScheduler.Accent[timeSignature.getBeatsPerMeasure() * subdivision];
+        for (int i = 0; i < accents.length; i++) {
+            if (i == 0) accents[i] = BeatScheduler.Accent.EMPHASIS;
+            else if (i % subdivision == 0) accents[i] = BeatScheduler.Accent.BEAT;
+            else accents[i] = BeatScheduler.Accent.SUBDIVISION;
+        }
+
+        return new RhythmPattern(null, timeSignature, subdivision, accents);
+    }
+
+    /**
+     * @return the name or null for a plain meter
+     */
+    public String getName() {
+        return name;
+    }
+
+    public TimeSignature getTimeSignature() {
+        return timeSignature;
+    }
+
+    public int getSubdivision() {
+        return subdivision;
+    }
+
+    /**
+     * The number of slots in one measure
+     * @return
+     */
+    public int getSlotsPerMeasure() {
+        return accents.length;
+    }
+
+    /**
+     * The accent for a position within the measure
+     * @param position
+     * @return
+     */
+    public BeatScheduler.Accent getAccent(int position) {
+        return accents[position];
+    }
+
+    /**
+     * Patterns are equal when they play the same, whatever their names
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RhythmPattern)) return false;
+
+        RhythmPattern that = (RhythmPattern) o;
+
+        if (subdivision != that.subdivision) return false;
+        if (!timeSignature.equals(that.timeSignature)) return false;
+        return Arrays.equals(accents, that.accents);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = timeSignature.hashCode();
+        result = 31 * result + subdivision;
+        result = 31 * result + Arrays.hashCode(accents);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return name != null ? name : timeSignature + " / " + subdivision;
+    }
+}
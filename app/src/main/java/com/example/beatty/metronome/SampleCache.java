@@ -0,0 +1,69 @@
+package com.example.beatty.metronome;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.io.IOException;
+
+/**
+ * Holds decoded sounds that have been resampled once to the device output rate, so playback
+ * never goes through the platform resampler.  Sounds are keyed by their raw resource id
+ */
+public class SampleCache {
+
+    private final int outputRate;
+    private final SparseArray<short[]> samples = new SparseArray<>();
+
+    /**
+     * Creates an empty cache
+     * @param outputRate the rate that all samples are converted to
+     */
+    public SampleCache(int outputRate) {
+        this.outputRate = outputRate;
+    }
+
+    public int getOutputRate() {
+        return outputRate;
+    }
+
+    /**
+     * Decodes and resamples a raw resource unless it is already cached
+     * @param context
+     * @param resId the raw resource id
+     * @return the id to use in a {@link SoundThread.Sound}
+     * @throws IOException if the resource can not be decoded
+     */
+    public int load(Context context, int resId) throws IOException {
+        synchronized (samples) {
+            if (samples.get(resId) != null) return resId;
+        }
+
+        SampleDecoder.Sample sample = SampleDecoder.decode(context, resId);
+        short[] data = sample.getData();
+
+        if (sample.getSampleRate() != outputRate) {
+            PolyphaseResampler resampler = new PolyphaseResampler(sample.getSampleRate(), outputRate);
+            data = resampler.process(data);
+        }
+
+        Log.d("audio", "cached " + resId + ": " + sample.getSampleRate() + " -> " + outputRate + ", " + data.length + " samples");
+
+        synchronized (samples) {
+            samples.put(resId, data);
+        }
+
+        return resId;
+    }
+
+    /**
+     * Gets the samples for a sound
+     * @param soundId the id returned by {@link #load(Context, int)}
+     * @return the samples at the output rate or null if not loaded
+     */
+    public short[] get(int soundId) {
+        synchronized (samples) {
+            return samples.get(soundId);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.beatty.metronome;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Build;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Decodes a compressed sound resource into mono 16 bit PCM
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+public class SampleDecoder {
+
+    /**
+     * How long to wait for a codec buffer, in microseconds
+     */
+    private static final long TIMEOUT_US = 10000;
+
+    /**
+     * A decoded sound and the rate it was recorded at
+     */
+    public static class Sample {
+        private final short[] data;
+        private final int sampleRate;
+
+        public Sample(short[] data, int sampleRate) {
+            this.data = data;
+            this.sampleRate = sampleRate;
+        }
+
+        public short[] getData() {
+            return data;
+        }
+
+        public int getSampleRate() {
+            return sampleRate;
+        }
+    }
+
+    /**
+     * Decoding relies on MediaCodec, which is only available from API 16
+     * @return
+     */
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+    }
+
+    /**
+     * Decodes a raw resource, mixing all channels down to one
+     * @param context
+     * @param resId the raw resource id
+     * @return
+     * @throws IOException if the resource has no audio track or can not be decoded
+     */
+    public static Sample decode(Context context, int resId) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        AssetFileDescriptor fd = context.getResources().openRawResourceFd(resId);
+        try {
+            extractor.setDataSource(fd.getFileDescriptor(), fd.getStartOffset(), fd.getLength());
+        } finally {
+            fd.close();
+        }
+
+        MediaCodec codec = null;
+        try {
+            MediaFormat format = selectAudioTrack(extractor);
+            if (format == null) {
+                throw new IOException("No audio track in resource " + resId);
+            }
+
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            return decode(extractor, codec, format);
+        } catch (IllegalStateException e) {
+            throw new IOException("Unable to decode resource " + resId, e);
+        } finally {
+            if (codec != null) codec.release();
+            extractor.release();
+        }
+    }
+
+    /**
+     * Selects the first audio track of the extractor
+     * @param extractor
+     * @return the format of the track or null if there is none
+     */
+    private static MediaFormat selectAudioTrack(MediaExtractor extractor) {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            MediaFormat format = extractor.getTrackFormat(i);
+            String mime = format.getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith("audio/")) {
+                extractor.selectTrack(i);
+                return format;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Feeds the extractor into the codec until the end of stream is reached.  The buffer arrays
+     * are deprecated from API 21 but are the only way to reach the buffers on API 16 to 20
+     */
+    @SuppressWarnings("deprecation")
+    private static Sample decode(MediaExtractor extractor, MediaCodec codec, MediaFormat format) {
+        ByteBuffer[] inputs = codec.getInputBuffers();
+        ByteBuffer[] outputs = codec.getOutputBuffers();
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+
+        int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+        int channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+
+        short[] pcm = new short[sampleRate];
+        int length = 0;
+        boolean inputDone = false;
+        boolean outputDone = false;
+
+        while (!outputDone) {
+            if (!inputDone) {
+                int in = codec.dequeueInputBuffer(TIMEOUT_US);
+                if (in >= 0) {
+                    int size = extractor.readSampleData(inputs[in], 0);
+                    if (size < 0) {
+                        codec.queueInputBuffer(in, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        inputDone = true;
+                    } else {
+                        codec.queueInputBuffer(in, 0, size, extractor.getSampleTime(), 0);
+                        extractor.advance();
+                    }
+                }
+            }
+
+            int out = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+            if (out >= 0) {
+                ByteBuffer buffer = outputs[out];
+                buffer.position(info.offset);
+                buffer.limit(info.offset + info.size);
+                ShortBuffer shorts = buffer.slice().order(ByteOrder.nativeOrder()).asShortBuffer();
+
+                int frames = shorts.remaining() / channels;
+                if (length + frames > pcm.length) {
+                    pcm = Arrays.copyOf(pcm, Math.max(pcm.length * 2, length + frames));
+                }
+
+                for (int i = 0; i < frames; i++) {
+                    int sum = 0;
+                    for (int c = 0; c < channels; c++) {
+                        sum += shorts.get();
+                    }
+                    pcm[length++] = (short) (sum / channels);
+                }
+
+                codec.releaseOutputBuffer(out, false);
+                outputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+            } else if (out == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                outputs = codec.getOutputBuffers();
+            } else if (out == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                MediaFormat outputFormat = codec.getOutputFormat();
+                sampleRate = outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                channels = outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            }
+        }
+
+        codec.stop();
+
+        return new Sample(Arrays.copyOf(pcm, length), sampleRate);
+    }
+}
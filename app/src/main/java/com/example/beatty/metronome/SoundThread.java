@@ -2,15 +2,18 @@ package com.example.beatty.metronome;
 
 import android.media.SoundPool;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-
 /**
- * A thread that plays sounds in a SoundPool in order to prevent lag on the main UI thread
+ * A thread that plays sounds in a SoundPool in order to prevent lag on the main UI thread.
+ * The sounds are played for the beat events read from a {@link BeatEventRing}
  * Created by beatty on 3/1/2016.
  */
 public class SoundThread extends Thread {
 
+    /**
+     * How long {@link #shutdown()} waits for the thread to finish
+     */
+    private static final long SHUTDOWN_TIMEOUT_MS = 1000;
+
     /**
      * Represents the sound to play in a SoundPool
      */
@@ -35,39 +38,159 @@ public class SoundThread extends Thread {
 
     private boolean running;
     private SoundPool soundPool;
-    // provides synchronization with other threads
-    private BlockingQueue<Sound> sounds = new LinkedBlockingQueue<Sound>();
+    // this thread's own position in the ring, so it never waits on other consumers
+    private final BeatEventRing.Cursor events;
+    private final BeatEvent event = new BeatEvent();
+    private final Sound[] accentSounds = new Sound[BeatScheduler.Accent.values().length];
+    private volatile boolean muted;
+    private volatile boolean warm;
+
+    private final LatencyStats latencyStats = new LatencyStats();
+
+    /**
+     * The due time and sequence of the event of the last sound read
+     */
+    private long soundTime;
+    private long soundSequence;
+
+    /**
+     * Used by subclasses that play sounds without a SoundPool
+     * @param ring the ring the beat events are read from
+     */
+    protected SoundThread(BeatEventRing ring) {
+        this.events = ring.newCursor();
+    }
 
     /**
      * Creates a thread that uses the soundPool to play sounds
      * @param soundPool
+     * @param ring the ring the beat events are read from
      */
-    public SoundThread (SoundPool soundPool) {
+    public SoundThread (SoundPool soundPool, BeatEventRing ring) {
+        this(ring);
         this.soundPool = soundPool;
     }
 
     /**
-     * While the thread is set to run, sounds will be removed from the queue and played on the
-     * soundPool
+     * While the thread is set to run, sounds will be played on the soundPool for each event
+     * in the ring
      */
     @Override
     public void run() {
         Sound sound;
-        while (running) {
+        while (isRunning()) {
             try {
-                sound = sounds.take();
+                sound = takeSound();
                 soundPool.play(sound.getSoundID(), sound.getVolume(), sound.getVolume(), 0, 0, 1f);
+
+                // the pool hides its output latency, so only the delay until the play call is known
+                latencyStats.record(soundSequence, Clock.SYSTEM.nanoTime() - soundTime);
             } catch (InterruptedException e) {}
 
         }
     }
 
     /**
-     * Add a sound to the queue of sounds to be played
-     * @param sound
+     * Sets the sound played for events with an accent.  Must be called before {@link #start()}
+     * @param accent
+     * @param sound the sound or null to stay silent
+     */
+    public void setSound(BeatScheduler.Accent accent, Sound sound) {
+        accentSounds[accent.ordinal()] = sound;
+    }
+
+    /**
+     * Silences the sounds while still reading the events
+     * @param muted
+     */
+    public void setMuted(boolean muted) {
+        this.muted = muted;
+    }
+
+    public boolean isMuted() {
+        return muted;
+    }
+
+    /**
+     * Keeps the output ready to play while idle, so the first sound after a start is not
+     * delayed by opening the output
+     * @param warm
+     */
+    public void setWarm(boolean warm) {
+        if (warm == this.warm) return;
+
+        this.warm = warm;
+        if (warm) prime();
+    }
+
+    public boolean isWarm() {
+        return warm;
+    }
+
+    /**
+     * Gets the output ready when the thread becomes warm.  A SoundPool has no stream to keep
+     * open, so a sound is played silently to start its output
      */
-    public void addSound(Sound sound) {
-        sounds.add(sound);
+    protected void prime() {
+        Sound sound = accentSounds[BeatScheduler.Accent.BEAT.ordinal()];
+        if (soundPool != null && sound != null) {
+            soundPool.play(sound.getSoundID(), 0f, 0f, 0, 0, 1f);
+        }
+    }
+
+    /**
+     * The latency of the sounds since the last start
+     * @return
+     */
+    public LatencyStats getLatencyStats() {
+        return latencyStats;
+    }
+
+    /**
+     * The clock time the event of the last sound read was due
+     * @return nanoseconds
+     */
+    protected long getSoundTime() {
+        return soundTime;
+    }
+
+    /**
+     * The sequence of the event of the last sound read
+     * @return
+     */
+    protected long getSoundSequence() {
+        return soundSequence;
+    }
+
+    /**
+     * Reads events until one has a sound
+     * @return the sound or null if no event with a sound is waiting
+     */
+    protected Sound pollSound() {
+        while (events.poll(event)) {
+            Sound sound = accentSounds[event.getAccent().ordinal()];
+            if (sound != null && !muted) {
+                soundTime = event.getTime();
+                soundSequence = event.getSequence();
+                return sound;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Waits for the next event with a sound
+     * @return the sound
+     * @throws InterruptedException
+     */
+    protected Sound takeSound() throws InterruptedException {
+        Sound sound;
+        while ((sound = pollSound()) == null) {
+            events.await(0);
+        }
+
+        return sound;
     }
 
     /**
@@ -78,6 +201,21 @@ public class SoundThread extends Thread {
         return running;
     }
 
+    /**
+     * Stops the thread and waits for it to finish.  The thread is interrupted so that it
+     * does not stay blocked waiting for the next sound
+     */
+    public void shutdown() {
+        setRunning(false);
+        interrupt();
+
+        try {
+            join(SHUTDOWN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Sets the state of the thread.  {@link #start()} must be called to actually
      * run the thread
@@ -0,0 +1,20 @@
+package com.example.beatty.metronome;
+
+/**
+ * Runs tasks at a time given by a {@link Clock}
+ */
+public interface TickExecutor {
+
+    /**
+     * Schedules a task, replacing any pending run of the same task
+     * @param task the task to run
+     * @param atNanos the clock time to run it at.  Times in the past run as soon as possible
+     */
+    void schedule(Runnable task, long atNanos);
+
+    /**
+     * Removes any pending run of a task
+     * @param task
+     */
+    void cancel(Runnable task);
+}
@@ -0,0 +1,293 @@
+package com.example.beatty.metronome;
+
+import android.annotation.TargetApi;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * A sound thread that mixes cached samples into a streaming AudioTrack opened at the native
+ * output rate.  Audio is written one native buffer at a time, and from API 24 the track asks
+ * for the low latency output path.  While warm, silence is written between sounds so the track
+ * keeps playing and the next sound does not wait for the output to start
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+public class TrackSoundThread extends SoundThread {
+
+    /**
+     * The number of sounds that can overlap
+     */
+    private static final int MAX_VOICES = 8;
+
+    /**
+     * AudioAttributes.FLAG_LOW_LATENCY, which is only public from API 24
+     */
+    private static final int FLAG_LOW_LATENCY = 0x100;
+
+    private static final int API_NOUGAT = 24;
+
+    private final SampleCache sampleCache;
+    private final NativeAudioParams params;
+
+    private final short[] buffer;
+    private final int[] mix;
+
+    private final short[][] voiceData = new short[MAX_VOICES][];
+    private final int[] voicePosition = new int[MAX_VOICES];
+    private final float[] voiceVolume = new float[MAX_VOICES];
+    private int voiceCount = 0;
+
+    private AudioTrack track;
+
+    /**
+     * Whether the track is playing rather than stopped
+     */
+    private boolean playing;
+
+    /**
+     * The frames written since the track last started playing
+     */
+    private long framesWritten;
+
+    /**
+     * Creates a thread that plays sounds from the cache
+     * @param sampleCache cache holding samples at the native rate
+     * @param params the native output parameters
+     * @param track a track from {@link #createTrack(NativeAudioParams)}, released by the thread
+     * @param ring the ring the beat events are read from
+     */
+    public TrackSoundThread(SampleCache sampleCache, NativeAudioParams params, AudioTrack track, BeatEventRing ring) {
+        super(ring);
+        this.sampleCache = sampleCache;
+        this.params = params;
+        this.track = track;
+        this.buffer = new short[params.getFramesPerBuffer()];
+        this.mix = new int[params.getFramesPerBuffer()];
+    }
+
+    /**
+     * While the thread is set to run, the sounds for new events are mixed into the track.  The
+     * ring is checked once per buffer.  Unless the thread is warm, the track is stopped while
+     * nothing is sounding and restarted when the next sound arrives.  If the track fails while
+     * writing, it is replaced, and the thread stops if that fails too
+     */
+    @Override
+    public void run() {
+        try {
+            while (isRunning()) {
+                try {
+                    Sound sound;
+                    while ((sound = pollSound()) != null) {
+                        startSound(sound);
+                    }
+
+                    if (voiceCount == 0 && !isWarm()) {
+                        if (playing) {
+                            track.stop();
+                            playing = false;
+                        }
+
+                        sound = takeSound();
+                        startTrack();
+                        startSound(sound);
+                    }
+
+                    if (!playing) {
+                        startTrack();
+                    }
+
+                    renderBuffer();
+                    int written = track.write(buffer, 0, buffer.length);
+                    if (written < 0) {
+                        Log.e("audio", "track write failed with " + written);
+                        if (!replaceTrack()) return;
+                        continue;
+                    }
+                    framesWritten += written;
+                } catch (InterruptedException e) {}
+            }
+        } finally {
+            track.release();
+        }
+    }
+
+    /**
+     * Wakes the thread if it is waiting with the track stopped, so it starts writing silence
+     */
+    @Override
+    protected void prime() {
+        interrupt();
+    }
+
+    /**
+     * Releases the failed track and creates a new one, which starts playing with the next buffer
+     * @return false if no track could be created
+     */
+    private boolean replaceTrack() {
+        track.release();
+        playing = false;
+
+        AudioTrack replacement = createTrack(params);
+        if (replacement == null) {
+            setRunning(false);
+            return false;
+        }
+
+        track = replacement;
+        return true;
+    }
+
+    private void startTrack() {
+        track.play();
+        playing = true;
+        framesWritten = 0;
+    }
+
+    /**
+     * Starts a voice for the sound and records how long after its beat it will be heard.  The
+     * sound starts in the next buffer written, which plays once the frames already queued in
+     * the track have played
+     * @param sound
+     */
+    private void startSound(Sound sound) {
+        startVoice(sound);
+
+        long queued = framesWritten - (track.getPlaybackHeadPosition() & 0xffffffffL);
+        long onset = Clock.SYSTEM.nanoTime() + Math.max(0, queued) * 1000000000L / params.getSampleRate();
+        getLatencyStats().record(getSoundSequence(), onset - getSoundTime());
+    }
+
+    /**
+     * Creates a mono streaming track whose buffer is a whole number of native buffers
+     * @param params the native output parameters
+     * @return the initialized track, or null if the output can not be opened
+     */
+    public static AudioTrack createTrack(NativeAudioParams params) {
+        int rate = params.getSampleRate();
+        int minBytes = AudioTrack.getMinBufferSize(rate, AudioFormat.CHANNEL_OUT_MONO, AudioFormat.ENCODING_PCM_16BIT);
+        if (minBytes <= 0) {
+            Log.w("audio", "no track buffer size for " + rate + " Hz: " + minBytes);
+            return null;
+        }
+
+        int frames = params.roundToBuffers(minBytes / 2);
+        Log.d("audio", "track buffer " + frames + " frames, min " + minBytes / 2);
+
+        AudioTrack track;
+        try {
+            if (Build.VERSION.SDK_INT >= API_NOUGAT) {
+                track = createLowLatencyTrack(rate, frames * 2);
+            } else {
+                track = new AudioTrack(AudioManager.STREAM_MUSIC, rate, AudioFormat.CHANNEL_OUT_MONO,
+                        AudioFormat.ENCODING_PCM_16BIT, frames * 2, AudioTrack.MODE_STREAM);
+            }
+        } catch (IllegalArgumentException e) {
+            Log.w("audio", "unable to create track", e);
+            return null;
+        }
+
+        if (track.getState() != AudioTrack.STATE_INITIALIZED) {
+            Log.w("audio", "track not initialized");
+            track.release();
+            return null;
+        }
+
+        return track;
+    }
+
+    /**
+     * Creates a track that asks for the low latency output path, which Java tracks are only
+     * given from API 24
+     * @param rate
+     * @param bytes
+     * @return
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static AudioTrack createLowLatencyTrack(int rate, int bytes) {
+        AudioAttributes attributes = new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_MEDIA)
+                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                .setFlags(FLAG_LOW_LATENCY)
+                .build();
+        AudioFormat format = new AudioFormat.Builder()
+                .setSampleRate(rate)
+                .setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
+                .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                .build();
+
+        return new AudioTrack(attributes, format, bytes, AudioTrack.MODE_STREAM,
+                AudioManager.AUDIO_SESSION_ID_GENERATE);
+    }
+
+    /**
+     * Adds a sound to the active voices, replacing the oldest voice if all are in use
+     * @param sound
+     */
+    private void startVoice(Sound sound) {
+        short[] data = sampleCache.get(sound.getSoundID());
+        if (data == null) return;
+
+        int voice = voiceCount;
+        if (voiceCount == MAX_VOICES) {
+            voice = 0;
+            for (int i = 1; i < voiceCount; i++) {
+                if (voicePosition[i] > voicePosition[voice]) voice = i;
+            }
+        } else {
+            voiceCount++;
+        }
+
+        voiceData[voice] = data;
+        voicePosition[voice] = 0;
+        voiceVolume[voice] = sound.getVolume();
+    }
+
+    /**
+     * Mixes one native buffer of all active voices into {@link #buffer}, dropping voices
+     * that have finished
+     */
+    private void renderBuffer() {
+        Arrays.fill(mix, 0);
+
+        for (int v = voiceCount - 1; v >= 0; v--) {
+            short[] data = voiceData[v];
+            int position = voicePosition[v];
+            float volume = voiceVolume[v];
+            int count = Math.min(mix.length, data.length - position);
+
+            for (int i = 0; i < count; i++) {
+                mix[i] += (int) (data[position + i] * volume);
+            }
+
+            voicePosition[v] = position + count;
+            if (voicePosition[v] >= data.length) {
+                removeVoice(v);
+            }
+        }
+
+        for (int i = 0; i < mix.length; i++) {
+            int value = mix[i];
+            if (value > Short.MAX_VALUE) value = Short.MAX_VALUE;
+            else if (value < Short.MIN_VALUE) value = Short.MIN_VALUE;
+            buffer[i] = (short) value;
+        }
+    }
+
+    /**
+     * Removes a voice by moving the last voice into its place
+     * @param voice
+     */
+    private void removeVoice(int voice) {
+        int last = voiceCount - 1;
+        voiceData[voice] = voiceData[last];
+        voicePosition[voice] = voicePosition[last];
+        voiceVolume[voice] = voiceVolume[last];
+        voiceData[last] = null;
+        voiceCount--;
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.beatty.metronome;
+
+import android.os.Vibrator;
+
+/**
+ * Plays waveforms on the device vibrator.  The vibrator API of this SDK level can not vary the
+ * amplitude, so the segments are played as an on and off pattern and the accents are only
+ * felt through the pulse lengths
+ */
+public class VibratorHapticOutput implements HapticOutput {
+
+    private final Vibrator vibrator;
+
+    public VibratorHapticOutput(Vibrator vibrator) {
+        this.vibrator = vibrator;
+    }
+
+    @Override
+    public void play(long[] timings, int[] amplitudes) {
+        vibrator.vibrate(timings, -1);
+    }
+
+    @Override
+    public void cancel() {
+        vibrator.cancel();
+    }
+}
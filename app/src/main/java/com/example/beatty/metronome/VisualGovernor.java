@@ -0,0 +1,153 @@
+package com.example.beatty.metronome;
+
+/**
+ * Decides how much of the display to update so that it does not make the ticks late.  Each
+ * tick reports how late it ran; a tick later than the deadline, or a slot skipped entirely,
+ * is a miss.  When a window has more misses than the budget the level steps down at once, and
+ * it steps back up one level after several windows in a row without a miss.
+ *
+ * The levels are cumulative, each one also dropping everything the levels above it drop.  The
+ * governor is not thread safe and is used on the thread that runs the ticks
+ */
+public class VisualGovernor {
+
+    /**
+     * How much of the display is updated
+     */
+    public enum Level {
+        /** Everything is shown */
+        FULL,
+        /** Subdivisions are not highlighted */
+        NO_SUBDIVISIONS,
+        /** The spark is hidden instead of animated */
+        NO_SPARK,
+        /** The notes are updated less often */
+        REDUCED_RATE
+    }
+
+    private static final Level[] LEVELS = Level.values();
+
+    /**
+     * A tick later than this is a miss.  Ticks posted to a handler are up to a millisecond late
+     * from rounding alone
+     */
+    public static final long DEFAULT_DEADLINE_NANOS = 8 * 1000 * 1000;
+
+    /**
+     * The length of the windows that misses are counted in
+     */
+    public static final long DEFAULT_WINDOW_NANOS = 2L * 1000 * 1000 * 1000;
+
+    /**
+     * The number of misses allowed in one window
+     */
+    public static final int DEFAULT_MISS_BUDGET = 2;
+
+    /**
+     * The number of windows in a row without a miss before stepping back up a level
+     */
+    public static final int DEFAULT_STABLE_WINDOWS = 5;
+
+    private final long deadlineNanos;
+    private final long windowNanos;
+    private final int missBudget;
+    private final int stableWindows;
+
+    private Level level = Level.FULL;
+    private long levelChanges;
+
+    /**
+     * The start of the current window, or -1 before the first tick
+     */
+    private long windowStart = -1;
+    private int windowMisses;
+    private int cleanWindows;
+
+    public VisualGovernor() {
+        this(DEFAULT_DEADLINE_NANOS, DEFAULT_WINDOW_NANOS, DEFAULT_MISS_BUDGET, DEFAULT_STABLE_WINDOWS);
+    }
+
+    /**
+     * @param deadlineNanos the lateness of a tick that counts as a miss
+     * @param windowNanos the length of the windows that misses are counted in
+     * @param missBudget the number of misses allowed in one window
+     * @param stableWindows the number of windows in a row without a miss before stepping up
+     */
+    public VisualGovernor(long deadlineNanos, long windowNanos, int missBudget, int stableWindows) {
+        this.deadlineNanos = deadlineNanos;
+        this.windowNanos = windowNanos;
+        this.missBudget = missBudget;
+        this.stableWindows = stableWindows;
+    }
+
+    /**
+     * Starts counting afresh, such as when playback starts.  The level is kept, since the
+     * load that caused it is likely still there
+     */
+    public void restart() {
+        windowStart = -1;
+        windowMisses = 0;
+        cleanWindows = 0;
+    }
+
+    /**
+     * Records a tick
+     * @param slotTime the clock time the tick was due
+     * @param dispatchTime the clock time the tick ran
+     * @param skippedSlots the number of slots skipped just before this tick
+     */
+    public void onTick(long slotTime, long dispatchTime, long skippedSlots) {
+        if (windowStart == -1) {
+            windowStart = dispatchTime;
+        }
+
+        // close the windows that ended before this tick
+        while (dispatchTime - windowStart >= windowNanos) {
+            if (windowMisses == 0) {
+                cleanWindows++;
+                if (cleanWindows >= stableWindows && level != Level.FULL) {
+                    setLevel(LEVELS[level.ordinal() - 1]);
+                    cleanWindows = 0;
+                }
+            } else {
+                cleanWindows = 0;
+            }
+
+            windowStart += windowNanos;
+            windowMisses = 0;
+        }
+
+        windowMisses += skippedSlots;
+        if (dispatchTime - slotTime > deadlineNanos) {
+            windowMisses++;
+        }
+
+        if (windowMisses > missBudget) {
+            if (level != Level.REDUCED_RATE) {
+                setLevel(LEVELS[level.ordinal() + 1]);
+            }
+
+            // give the new level a whole window to take effect
+            windowStart = dispatchTime;
+            windowMisses = 0;
+            cleanWindows = 0;
+        }
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * The number of times the level has changed in either direction
+     * @return
+     */
+    public long getLevelChanges() {
+        return levelChanges;
+    }
+
+    private void setLevel(Level level) {
+        this.level = level;
+        levelChanges++;
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.beatty.metronome;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that each cursor reads the published events in order at its own pace
+ */
+public class BeatEventRingTest {
+
+    private static final BeatScheduler.Accent[] ACCENTS = BeatScheduler.Accent.values();
+
+    @Test
+    public void poll_readsEventsInOrder() {
+        BeatEventRing ring = new BeatEventRing(8);
+        BeatEventRing.Cursor cursor = ring.newCursor();
+        BeatEvent event = new BeatEvent();
+
+        assertFalse(cursor.poll(event));
+
+        ring.publish(0, BeatScheduler.Accent.EMPHASIS, 100);
+        ring.publish(1, BeatScheduler.Accent.SUBDIVISION, 200);
+
+        assertTrue(cursor.poll(event));
+        assertEquals(0, event.getSequence());
+        assertEquals(0, event.getPosition());
+        assertEquals(BeatScheduler.Accent.EMPHASIS, event.getAccent());
+        assertEquals(100, event.getTime());
+
+        assertTrue(cursor.poll(event));
+        assertEquals(1, event.getSequence());
+        assertEquals(1, event.getPosition());
+        assertEquals(BeatScheduler.Accent.SUBDIVISION, event.getAccent());
+        assertEquals(200, event.getTime());
+
+        assertFalse(cursor.poll(event));
+    }
+
+    @Test
+    public void cursors_readIndependently() {
+        BeatEventRing ring = new BeatEventRing(8);
+        BeatEventRing.Cursor fast = ring.newCursor();
+        BeatEventRing.Cursor slow = ring.newCursor();
+        BeatEvent event = new BeatEvent();
+
+        for (int i = 0; i < 5; i++) {
+            ring.publish(i, BeatScheduler.Accent.BEAT, i);
+            assertTrue(fast.poll(event));
+            assertEquals(i, event.getTime());
+        }
+
+        // a cursor created later only sees new events
+        BeatEventRing.Cursor late = ring.newCursor();
+        ring.publish(5, BeatScheduler.Accent.BEAT, 5);
+
+        assertTrue(late.poll(event));
+        assertEquals(5, event.getSequence());
+
+        for (int i = 0; i < 6; i++) {
+            assertTrue(slow.poll(event));
+            assertEquals(i, event.getSequence());
+        }
+
+        assertEquals(0, slow.getOverruns());
+    }
+
+    @Test
+    public void laggingCursor_skipsOverwrittenEvents() {
+        BeatEventRing ring = new BeatEventRing(4);
+        BeatEventRing.Cursor cursor = ring.newCursor();
+        BeatEvent event = new BeatEvent();
+
+        for (int i = 0; i < 10; i++) {
+            ring.publish(i, BeatScheduler.Accent.BEAT, i);
+        }
+
+        // only the last full ring is left
+        for (int i = 6; i < 10; i++) {
+            assertTrue(cursor.poll(event));
+            assertEquals(i, event.getSequence());
+            assertEquals(i, event.getTime());
+        }
+
+        assertFalse(cursor.poll(event));
+        assertEquals(6, cursor.getOverruns());
+    }
+
+    @Test
+    public void skipAll_discardsUnreadEvents() {
+        BeatEventRing ring = new BeatEventRing(8);
+        BeatEventRing.Cursor cursor = ring.newCursor();
+        BeatEvent event = new BeatEvent();
+
+        ring.publish(0, BeatScheduler.Accent.EMPHASIS, 0);
+        ring.publish(1, BeatScheduler.Accent.BEAT, 1);
+        cursor.skipAll();
+
+        assertFalse(cursor.poll(event));
+
+        ring.publish(2, BeatScheduler.Accent.BEAT, 2);
+        assertTrue(cursor.poll(event));
+        assertEquals(2, event.getSequence());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacity_mustBePowerOfTwo() {
+        new BeatEventRing(12);
+    }
+
+    @Test
+    public void concurrentReaders_neverSeeTornEvents() throws InterruptedException {
+        final int count = 200000;
+        final BeatEventRing ring = new BeatEventRing(16);
+        final BeatEventRing.Cursor[] cursors = {ring.newCursor(), ring.newCursor()};
+        final String[] failures = new String[cursors.length];
+        final long[] read = new long[cursors.length];
+
+        Thread[] readers = new Thread[cursors.length];
+        for (int r = 0; r < readers.length; r++) {
+            final int reader = r;
+            readers[r] = new Thread() {
+                @Override
+                public void run() {
+                    BeatEventRing.Cursor cursor = cursors[reader];
+                    BeatEvent event = new BeatEvent();
+                    long last = -1;
+
+                    try {
+                        while (last < count - 1) {
+                            if (!cursor.poll(event)) {
+                                cursor.await(10);
+                                continue;
+                            }
+
+                            long sequence = event.getSequence();
+                            if (sequence <= last || event.getTime() != sequence
+                                    || event.getPosition() != sequence % 7
+                                    || event.getAccent() != ACCENTS[(int) (sequence % ACCENTS.length)]) {
+                                failures[reader] = "inconsistent event " + sequence + " after " + last;
+                                return;
+                            }
+
+                            last = sequence;
+                            read[reader]++;
+
+                            // the second reader is slow enough to fall behind
+                            if (reader == 1 && sequence % 64 == 0) {
+                                Thread.sleep(1);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        failures[reader] = "interrupted";
+                    }
+                }
+            };
+            readers[r].start();
+        }
+
+        for (long i = 0; i < count; i++) {
+            ring.publish((int) (i % 7), ACCENTS[(int) (i % ACCENTS.length)], i);
+        }
+
+        for (int r = 0; r < readers.length; r++) {
+            readers[r].join(10000);
+            assertFalse(readers[r].isAlive());
+            assertNull(failures[r], failures[r]);
+            assertEquals(count, read[r] + cursors[r].getOverruns());
+        }
+    }
+}
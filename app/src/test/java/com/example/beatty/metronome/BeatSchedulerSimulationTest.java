@@ -0,0 +1,311 @@
+package com.example.beatty.metronome;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the scheduler for hours of virtual time and checks that slots stay on the grid, are
+ * neither repeated nor dropped and carry the right accents
+ */
+public class BeatSchedulerSimulationTest {
+
+    private static final long START = 5000000000L;
+    private static final long MILLI = 1000000L;
+    private static final long SECOND = 1000 * MILLI;
+    private static final long HOUR = 3600 * SECOND;
+
+    private static final TimeSignature[] SIGNATURES = {
+            TimeSignature.COMMON_TIME,
+            new TimeSignature(3, 4),
+            new TimeSignature(6, 8),
+            new TimeSignature(7, 8)
+    };
+
+    private static final int[] SUBDIVISIONS = {1, 2, 3, 4, 5, 6, 7};
+
+    /**
+     * A slot as seen by the listener
+     */
+    private static class Played {
+        int position;
+        BeatScheduler.Accent accent;
+        long slotTime;
+        long runTime;
+    }
+
+    private SimulatedTime time;
+    private BeatScheduler scheduler;
+    private List<Played> played;
+
+    @Before
+    public void setUp() {
+        time = new SimulatedTime(START);
+        played = new ArrayList<>();
+        scheduler = new BeatScheduler(time, time, new BeatScheduler.Listener() {
+            @Override
+            public void onSlot(int position, BeatScheduler.Accent accent, long slotTime) {
+                Played p = new Played();
+                p.position = position;
+                p.accent = accent;
+                p.slotTime = slotTime;
+                p.runTime = time.nanoTime();
+                played.add(p);
+            }
+        });
+    }
+
+    @Test
+    public void steadyTempo_hasNoDrift() {
+        scheduler.setBeatsPerMinute(120);
+        scheduler.setMeter(TimeSignature.COMMON_TIME, 2);
+        scheduler.start();
+
+        time.runUntil(START + 3 * HOUR);
+
+        long slotNanos = 250 * MILLI;
+        assertEquals(3 * 3600 * 4 + 1, played.size());
+
+        for (int i = 0; i < played.size(); i++) {
+            Played p = played.get(i);
+            assertEquals(START + i * slotNanos, p.slotTime);
+            assertEquals(p.slotTime, p.runTime);
+            assertEquals(i % 8, p.position);
+            assertEquals(expectedAccent(p.position, 2), p.accent);
+        }
+
+        assertEquals(0, scheduler.getMissedSlots());
+        assertEquals(0, scheduler.getMaxLateness());
+    }
+
+    @Test
+    public void tempoMeterChangesAndStalls_keepGridAndAccents() {
+        Random random = new Random(42);
+
+        int bpm = 100;
+        TimeSignature signature = TimeSignature.COMMON_TIME;
+        int subdivision = 1;
+        scheduler.setBeatsPerMinute(bpm);
+        scheduler.setMeter(signature, subdivision);
+        scheduler.start();
+
+        // the shortest possible slot is about 35.7 ms, so these stalls never cost a whole slot
+        long maxStall = 30 * MILLI;
+        for (long t = START; t < START + 2 * HOUR; t += (2 + random.nextInt(20)) * SECOND) {
+            time.addStall(t + random.nextInt(1000) * MILLI, random.nextInt(30) * MILLI);
+        }
+
+        // each run of the simulation as {first slot, end slot, slots per minute, slots per measure, subdivision}
+        List<long[]> runs = new ArrayList<>();
+        List<Integer> measureStarts = new ArrayList<>();
+        measureStarts.add(0);
+
+        long now = START;
+        while (now < START + 2 * HOUR) {
+            long until = now + (5 + random.nextInt(120)) * SECOND;
+            int before = played.size();
+            time.runUntil(until);
+            runs.add(new long[]{before, played.size(), bpm * subdivision,
+                    signature.getBeatsPerMeasure() * subdivision, subdivision});
+            now = until;
+
+            if (random.nextBoolean()) {
+                bpm = 40 + random.nextInt(201);
+                scheduler.setBeatsPerMinute(bpm);
+            } else {
+                TimeSignature nextSignature = SIGNATURES[random.nextInt(SIGNATURES.length)];
+                int nextSubdivision = SUBDIVISIONS[random.nextInt(SUBDIVISIONS.length)];
+
+                // setting the same meter again does not restart the measure
+                if (!nextSignature.equals(signature) || nextSubdivision != subdivision) {
+                    measureStarts.add(played.size());
+                }
+
+                signature = nextSignature;
+                subdivision = nextSubdivision;
+                scheduler.setMeter(signature, subdivision);
+            }
+        }
+
+        assertTrue(played.size() > 10000);
+
+        for (int i = 0; i < played.size(); i++) {
+            Played p = played.get(i);
+            long[] run = runs.get(runOf(runs, i));
+
+            long lateness = p.runTime - p.slotTime;
+            assertTrue("slot " + i + " late by " + lateness, lateness >= 0 && lateness <= maxStall);
+
+            if (measureStarts.contains(i)) {
+                assertEquals("slot " + i, 0, p.position);
+            } else {
+                // a slot is spaced from the previous one by the slot length in effect when
+                // the previous one was played, rounded either way to the nanosecond
+                Played previous = played.get(i - 1);
+                long[] previousRun = runs.get(runOf(runs, i - 1));
+                long gap = p.slotTime - previous.slotTime;
+                assertTrue("gap before slot " + i + " was " + gap,
+                        Math.abs(gap * previousRun[2] - 60 * SECOND) < previousRun[2]);
+                assertEquals("slot " + i, (previous.position + 1) % run[3], p.position);
+            }
+
+            assertEquals("slot " + i, expectedAccent(p.position, (int) run[4]), p.accent);
+        }
+
+        assertEquals(0, scheduler.getMissedSlots());
+        assertTrue(scheduler.getMaxLateness() > 0);
+    }
+
+    @Test
+    public void tuplets_doNotAccumulateRounding() {
+        // triplets at 120 BPM are 166666666.67 ns apart
+        scheduler.setBeatsPerMinute(120);
+        scheduler.setMeter(TimeSignature.COMMON_TIME, 3);
+        scheduler.start();
+
+        time.runUntil(START + 3 * HOUR);
+
+        assertEquals(3 * 3600 * 6 + 1, played.size());
+        for (int i = 0; i < played.size(); i++) {
+            assertEquals(START + i * 60 * SECOND / 360, played.get(i).slotTime);
+        }
+
+        // every third triplet lands exactly on the beat, even hours later
+        Played last = played.get(played.size() - 1);
+        assertEquals(START + 3 * HOUR, last.slotTime);
+        assertEquals(BeatScheduler.Accent.EMPHASIS, last.accent);
+    }
+
+    @Test
+    public void septuplets_keepAccents() {
+        scheduler.setBeatsPerMinute(97);
+        scheduler.setMeter(new TimeSignature(3, 4), 7);
+        scheduler.start();
+
+        time.runUntil(START + HOUR);
+
+        for (int i = 0; i < played.size(); i++) {
+            Played p = played.get(i);
+            assertEquals(i % 21, p.position);
+            assertEquals(expectedAccent(p.position, 7), p.accent);
+            assertEquals(START + i * 60 * SECOND / (97 * 7), p.slotTime);
+        }
+    }
+
+    @Test
+    public void accents_followMeter() {
+        scheduler.setMeter(new TimeSignature(3, 4), 4);
+        scheduler.start();
+
+        time.runUntil(START + 10 * SECOND);
+
+        for (Played p : played) {
+            assertTrue(p.position < 12);
+            assertEquals(expectedAccent(p.position, 4), p.accent);
+        }
+        assertEquals(BeatScheduler.Accent.EMPHASIS, played.get(12).accent);
+    }
+
+    @Test
+    public void pattern_setsAccentsAndRestartsMeasure() {
+        BeatScheduler.Accent[] accents = new BeatScheduler.Accent[8];
+        Arrays.fill(accents, BeatScheduler.Accent.SUBDIVISION);
+        accents[0] = BeatScheduler.Accent.EMPHASIS;
+        accents[3] = BeatScheduler.Accent.BEAT;
+        accents[6] = BeatScheduler.Accent.BEAT;
+        RhythmPattern tresillo = new RhythmPattern("Tresillo", TimeSignature.COMMON_TIME, 2, accents);
+
+        scheduler.start();
+        time.runUntil(START + SECOND + MILLI);
+        int before = played.size();
+
+        scheduler.setPattern(tresillo);
+        assertEquals(2, scheduler.getSubdivision());
+        time.runUntil(START + 10 * SECOND);
+
+        for (int i = before; i < played.size(); i++) {
+            Played p = played.get(i);
+            assertEquals((i - before) % 8, p.position);
+            assertEquals(accents[p.position], p.accent);
+        }
+
+        // the same accents under another name are not a change
+        scheduler.setPattern(new RhythmPattern("Other", TimeSignature.COMMON_TIME, 2, accents));
+        assertSame(tresillo, scheduler.getPattern());
+    }
+
+    @Test
+    public void longStall_skipsSlotsWithoutBurst() {
+        scheduler.setBeatsPerMinute(60);
+        scheduler.setMeter(TimeSignature.COMMON_TIME, 1);
+        scheduler.start();
+
+        time.addStall(START + 10500 * MILLI, 3 * SECOND);
+        time.runUntil(START + 20 * SECOND);
+
+        // slots 11 and 12 fall inside the stall, slot 13 is played half a second late
+        Played late = played.get(11);
+        assertEquals(START + 13 * SECOND, late.slotTime);
+        assertEquals(START + 13500 * MILLI, late.runTime);
+        assertEquals(1, late.position);
+        assertEquals(2, played.get(12).position);
+        assertEquals(START + 14 * SECOND, played.get(12).runTime);
+
+        assertEquals(2, scheduler.getMissedSlots());
+        assertEquals(500 * MILLI, scheduler.getMaxLateness());
+        assertEquals(21 - 2, played.size());
+    }
+
+    @Test
+    public void stop_cancelsPendingTick() {
+        scheduler.start();
+        time.runUntil(START + SECOND);
+        scheduler.stop();
+
+        int count = played.size();
+        time.runUntil(START + HOUR);
+
+        assertEquals(count, played.size());
+        assertEquals(0, time.pendingTasks());
+    }
+
+    @Test
+    public void startWithLead_firstSlotLandsOnItsTime() {
+        scheduler.start(100 * MILLI);
+
+        time.runUntil(START + 99 * MILLI);
+        assertTrue(played.isEmpty());
+
+        time.runUntil(START + 10 * SECOND);
+
+        // the grid is measured from the delayed downbeat
+        assertEquals(START + 100 * MILLI, played.get(0).slotTime);
+        assertEquals(BeatScheduler.Accent.EMPHASIS, played.get(0).accent);
+        for (int i = 0; i < played.size(); i++) {
+            assertEquals(START + 100 * MILLI + i * 500 * MILLI, played.get(i).slotTime);
+        }
+        assertEquals(0, scheduler.getMaxLateness());
+    }
+
+    private static BeatScheduler.Accent expectedAccent(int position, int subdivision) {
+        if (position == 0) return BeatScheduler.Accent.EMPHASIS;
+        if (position % subdivision == 0) return BeatScheduler.Accent.BEAT;
+        return BeatScheduler.Accent.SUBDIVISION;
+    }
+
+    /**
+     * Finds the run that played a slot
+     */
+    private static int runOf(List<long[]> runs, int slot) {
+        for (int i = 0; i < runs.size(); i++) {
+            if (slot >= runs.get(i)[0] && slot < runs.get(i)[1]) return i;
+        }
+        throw new AssertionError("slot " + slot + " was not played");
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.beatty.metronome;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The patterns bundled with the app and the generator of res/raw/patterns.btpl.  After changing
+ * the patterns or the library format, run {@link #main(String[])} to write the resource again;
+ * {@link BundledPatternsTest} fails until it is
+ */
+public class BundledPatterns {
+
+    /**
+     * Where the library is written, relative to the app directory
+     */
+    static final String RESOURCE = "src/main/res/raw/patterns.btpl";
+
+    /**
+     * The places the resource is looked for, relative to the working directory, which is the
+     * app directory under Gradle and may be the project directory in an IDE
+     */
+    private static final String[] RESOURCE_PATHS = {RESOURCE, "app/" + RESOURCE};
+
+    /**
+     * Each pattern is a name, a time signature, the subdivision and one character per slot:
+     * X for the emphasis, x for a beat and . for a subdivision
+     */
+    private static final Object[][] PATTERNS = {
+            {"Backbeat",          4, 4, 1, ".X.x"},
+            {"Tresillo",          4, 4, 2, "X..x..x."},
+            {"Cinquillo",         4, 4, 2, "X.xx.xx."},
+            {"Habanera",          2, 4, 4, "X..xx.x."},
+            {"Son clave 3-2",     4, 4, 4, "X..x..x...x.x..."},
+            {"Son clave 2-3",     4, 4, 4, "..X.x...x..x..x."},
+            {"Rumba clave 3-2",   4, 4, 4, "X..x...x..x.x..."},
+            {"Bossa nova clave",  4, 4, 4, "X..x..x...x..x.."},
+            {"Shuffle",           4, 4, 3, "X.xx.xx.xx.x"},
+            {"5/8 (2+3)",         5, 8, 1, "X.x.."},
+            {"5/8 (3+2)",         5, 8, 1, "X..x."},
+            {"7/8 (2+2+3)",       7, 8, 1, "X.x.x.."},
+            {"7/8 (3+2+2)",       7, 8, 1, "X..x.x."},
+            {"9/8 (2+2+2+3)",     9, 8, 1, "X.x.x.x.."},
+            {"11/8 (2+2+3+2+2)", 11, 8, 1, "X.x.x..x.x."},
+            {"12/8 (3+3+3+3)",   12, 8, 1, "X..x..x..x.."},
+    };
+
+    /**
+     * Reads a pattern from its row in {@link #PATTERNS}
+     * @param row
+     * @return
+     */
+    static RhythmPattern parse(Object[] row) {
+        TimeSignature timeSignature = new TimeSignature((Integer) row[1], (Integer) row[2]);
+        int subdivision = (Integer) row[3];
+        String slots = (String) row[4];
+
+        if (slots.length() != timeSignature.getBeatsPerMeasure() * subdivision) {
+            throw new IllegalArgumentException(row[0] + " has " + slots.length() + " slots");
+        }
+
+        BeatScheduler.Accent[] accents = new BeatScheduler.Accent[slots.length()];
+        for (int i = 0; i < slots.length(); i++) {
+            switch (slots.charAt(i)) {
+                case 'X':
+                    accents[i] = BeatScheduler.Accent.EMPHASIS;
+                    break;
+                case 'x':
+                    accents[i] = BeatScheduler.Accent.BEAT;
+                    break;
+                case '.':
+                    accents[i] = BeatScheduler.Accent.SUBDIVISION;
+                    break;
+                default:
+                    throw new IllegalArgumentException(row[0] + " has an unknown slot " + slots.charAt(i));
+            }
+        }
+
+        return new RhythmPattern((String) row[0], timeSignature, subdivision, accents);
+    }
+
+    /**
+     * Writes the library of all the bundled patterns
+     * @param out
+     * @throws IOException
+     */
+    static void write(OutputStream out) throws IOException {
+        PatternLibraryWriter writer = new PatternLibraryWriter();
+        for (Object[] row : PATTERNS) {
+            writer.add(parse(row));
+        }
+        writer.write(out);
+    }
+
+    /**
+     * Finds the checked in resource from the app or the project directory
+     * @return the file or null if it is in neither
+     */
+    static File findResource() {
+        for (String path : RESOURCE_PATHS) {
+            File file = new File(path);
+            if (file.isFile()) {
+                return file;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Writes the library resource
+     * @param args an optional path to write to instead of the checked in resource
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        File file = args.length > 0 ? new File(args[0]) : findResource();
+        if (file == null) {
+            throw new IOException("Run from the app or project directory, or pass the path of " + RESOURCE);
+        }
+
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            write(out);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.beatty.metronome;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the bundled library resource is the one written by {@link BundledPatterns}
+ */
+public class BundledPatternsTest {
+
+    @Test
+    public void resource_matchesTheGenerator() throws IOException {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        BundledPatterns.write(expected);
+
+        File file = BundledPatterns.findResource();
+        assertNotNull(BundledPatterns.RESOURCE + " not found from " + new File("").getAbsolutePath(), file);
+
+        byte[] actual = new byte[(int) file.length()];
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.readFully(actual);
+        }
+
+        assertArrayEquals("run BundledPatterns to update " + BundledPatterns.RESOURCE,
+                expected.toByteArray(), actual);
+    }
+
+    @Test
+    public void resource_loadsEveryPattern() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BundledPatterns.write(out);
+        PatternLibrary library = new PatternLibrary(ByteBuffer.wrap(out.toByteArray()));
+
+        assertEquals("Backbeat", library.getName(0));
+        assertEquals(BeatScheduler.Accent.EMPHASIS, library.load(0).getAccent(1));
+        for (int i = 0; i < library.size(); i++) {
+            assertEquals(library.getName(i), library.load(i).getName());
+        }
+    }
+}
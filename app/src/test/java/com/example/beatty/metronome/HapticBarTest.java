@@ -0,0 +1,212 @@
+package com.example.beatty.metronome;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the compiled vibration waveforms and how they are submitted for each measure
+ */
+public class HapticBarTest {
+
+    private static final long START = 5000000000L;
+    private static final long MILLI = 1000000L;
+
+    /**
+     * Records the waveforms instead of vibrating
+     */
+    private static class FakeVibrator implements HapticOutput {
+        final List<long[]> timings = new ArrayList<>();
+        final List<int[]> amplitudes = new ArrayList<>();
+        int cancels;
+
+        @Override
+        public void play(long[] timings, int[] amplitudes) {
+            this.timings.add(timings);
+            this.amplitudes.add(amplitudes);
+        }
+
+        @Override
+        public void cancel() {
+            cancels++;
+        }
+    }
+
+    @Test
+    public void commonTime_pulsesOnEachBeat() {
+        HapticBar bar = HapticBar.compile(RhythmPattern.of(TimeSignature.COMMON_TIME, 1), 120);
+
+        assertArrayEquals(new long[] {0, 50, 450, 30, 470, 30, 470, 30}, bar.getTimings());
+        assertArrayEquals(new int[] {0, 255, 0, 160, 0, 160, 0, 160}, bar.getAmplitudes());
+        assertEquals(2000, bar.getDuration());
+    }
+
+    @Test
+    public void subdivisions_areNotFelt() {
+        HapticBar bar = HapticBar.compile(RhythmPattern.of(new TimeSignature(3, 4), 2), 60);
+
+        assertArrayEquals(new long[] {0, 50, 950, 30, 970, 30}, bar.getTimings());
+        assertEquals(3000, bar.getDuration());
+    }
+
+    @Test
+    public void triplets_stayOnExactSlotTimes() {
+        BeatScheduler.Accent[] accents = new BeatScheduler.Accent[6];
+        Arrays.fill(accents, BeatScheduler.Accent.BEAT);
+        accents[0] = BeatScheduler.Accent.EMPHASIS;
+        RhythmPattern triplets = new RhythmPattern("Triplets", new TimeSignature(2, 4), 3, accents);
+
+        // a third of 500 ms is not whole, so each pulse starts at its own rounded time
+        long[] timings = HapticBar.compile(triplets, 120).getTimings();
+        long start = 0;
+        for (int i = 0; i < 6; i++) {
+            start += timings[2 * i];
+            assertEquals(i * 500 / 3, start);
+            start += timings[2 * i + 1];
+        }
+    }
+
+    @Test
+    public void fastTempo_shortensPulses() {
+        HapticBar bar = HapticBar.compile(RhythmPattern.of(TimeSignature.COMMON_TIME, 1), 300);
+
+        // 200 ms beats leave room for the full pulses, 7 slots per beat do not
+        assertEquals(50, bar.getTimings()[1]);
+
+        BeatScheduler.Accent[] accents = new BeatScheduler.Accent[28];
+        Arrays.fill(accents, BeatScheduler.Accent.BEAT);
+        accents[0] = BeatScheduler.Accent.EMPHASIS;
+        long[] timings = HapticBar.compile(new RhythmPattern("Fast", TimeSignature.COMMON_TIME, 7, accents), 300).getTimings();
+        for (int i = 1; i < timings.length; i += 2) {
+            assertEquals(14, timings[i]);
+        }
+    }
+
+    @Test
+    public void from_trimsTheStartOfTheMeasure() {
+        HapticBar bar = HapticBar.compile(RhythmPattern.of(TimeSignature.COMMON_TIME, 1), 120);
+
+        HapticBar inPulse = bar.from(20);
+        assertArrayEquals(new long[] {0, 30, 450, 30, 470, 30, 470, 30}, inPulse.getTimings());
+        assertArrayEquals(new int[] {0, 255, 0, 160, 0, 160, 0, 160}, inPulse.getAmplitudes());
+
+        HapticBar inGap = bar.from(600);
+        assertArrayEquals(new long[] {400, 30, 470, 30}, inGap.getTimings());
+        assertEquals(1400, inGap.getDuration());
+
+        assertTrue(bar.from(1900).isEmpty());
+
+        HapticBar delayed = bar.from(-100);
+        assertArrayEquals(new long[] {100, 50, 450, 30, 470, 30, 470, 30}, delayed.getTimings());
+        assertEquals(2100, delayed.getDuration());
+    }
+
+    @Test
+    public void thread_submitsOneWaveformPerMeasure() {
+        SimulatedTime time = new SimulatedTime(START);
+        FakeVibrator vibrator = new FakeVibrator();
+        HapticThread thread = new HapticThread(new BeatEventRing(), vibrator, time);
+        thread.setBar(HapticBar.compile(RhythmPattern.of(TimeSignature.COMMON_TIME, 1), 120));
+
+        // nothing is felt until silent mode is on
+        thread.onEvent(0, START);
+        assertTrue(vibrator.timings.isEmpty());
+
+        thread.setEnabled(true);
+        for (int beat = 0; beat < 8; beat++) {
+            time.runUntil(START + beat * 500 * MILLI);
+            thread.onEvent(beat % 4, time.nanoTime());
+        }
+
+        assertEquals(2, vibrator.timings.size());
+        assertArrayEquals(new long[] {0, 50, 450, 30, 470, 30, 470, 30}, vibrator.timings.get(1));
+        assertArrayEquals(new int[] {0, 255, 0, 160, 0, 160, 0, 160}, vibrator.amplitudes.get(1));
+    }
+
+    @Test
+    public void thread_alignsLateMeasureToTheBeatClock() {
+        SimulatedTime time = new SimulatedTime(START);
+        FakeVibrator vibrator = new FakeVibrator();
+        HapticThread thread = new HapticThread(new BeatEventRing(), vibrator, time);
+        thread.setBar(HapticBar.compile(RhythmPattern.of(TimeSignature.COMMON_TIME, 1), 120));
+        thread.setEnabled(true);
+
+        time.runUntil(START + 30 * MILLI);
+        thread.onEvent(0, START);
+
+        assertArrayEquals(new long[] {0, 20, 450, 30, 470, 30, 470, 30}, vibrator.timings.get(0));
+    }
+
+    @Test
+    public void thread_ignoresDownbeatsFromBeforeCancel() {
+        SimulatedTime time = new SimulatedTime(START);
+        FakeVibrator vibrator = new FakeVibrator();
+        HapticThread thread = new HapticThread(new BeatEventRing(), vibrator, time);
+        thread.setBar(HapticBar.compile(RhythmPattern.of(TimeSignature.COMMON_TIME, 1), 120));
+        thread.setEnabled(true);
+
+        time.runUntil(START + MILLI);
+        thread.cancel();
+        thread.onEvent(0, START);
+
+        assertTrue(vibrator.timings.isEmpty());
+        assertEquals(1, vibrator.cancels);
+    }
+
+    @Test
+    public void thread_resubmitsTheRestOfTheMeasureOnTempoChange() {
+        SimulatedTime time = new SimulatedTime(START);
+        FakeVibrator vibrator = new FakeVibrator();
+        HapticThread thread = new HapticThread(new BeatEventRing(), vibrator, time);
+        thread.setBar(HapticBar.compile(RhythmPattern.of(TimeSignature.COMMON_TIME, 1), 120));
+        thread.setEnabled(true);
+
+        thread.onEvent(0, START);
+        time.runUntil(START + 500 * MILLI);
+        thread.onEvent(1, time.nanoTime());
+
+        // the third beat is still due at the old tempo, 400 ms away, and the fourth follows at the new one
+        time.runUntil(START + 600 * MILLI);
+        thread.setBar(HapticBar.compile(RhythmPattern.of(TimeSignature.COMMON_TIME, 1), 60));
+
+        assertEquals(1, vibrator.cancels);
+        assertEquals(2, vibrator.timings.size());
+        assertArrayEquals(new long[] {400, 30, 970, 30}, vibrator.timings.get(1));
+        assertArrayEquals(new int[] {0, 160, 0, 160}, vibrator.amplitudes.get(1));
+    }
+
+    @Test
+    public void thread_delaysTheRestOfTheMeasureUntilTheNextSlot() {
+        SimulatedTime time = new SimulatedTime(START);
+        FakeVibrator vibrator = new FakeVibrator();
+        HapticThread thread = new HapticThread(new BeatEventRing(), vibrator, time);
+        thread.setBar(HapticBar.compile(RhythmPattern.of(TimeSignature.COMMON_TIME, 1), 60));
+        thread.setEnabled(true);
+
+        thread.onEvent(0, START);
+        time.runUntil(START + 100 * MILLI);
+        thread.setBar(HapticBar.compile(RhythmPattern.of(TimeSignature.COMMON_TIME, 1), 240));
+
+        assertArrayEquals(new long[] {900, 30, 220, 30, 220, 30}, vibrator.timings.get(1));
+    }
+
+    @Test
+    public void thread_waitsForTheDownbeatOnPatternChange() {
+        SimulatedTime time = new SimulatedTime(START);
+        FakeVibrator vibrator = new FakeVibrator();
+        HapticThread thread = new HapticThread(new BeatEventRing(), vibrator, time);
+        thread.setBar(HapticBar.compile(RhythmPattern.of(TimeSignature.COMMON_TIME, 1), 120));
+        thread.setEnabled(true);
+
+        thread.onEvent(0, START);
+        time.runUntil(START + 100 * MILLI);
+        thread.setBar(HapticBar.compile(RhythmPattern.of(new TimeSignature(3, 4), 1), 120));
+
+        assertEquals(1, vibrator.timings.size());
+        assertEquals(0, vibrator.cancels);
+    }
+}
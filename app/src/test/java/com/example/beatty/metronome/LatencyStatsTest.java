@@ -0,0 +1,58 @@
+package com.example.beatty.metronome;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the first beat of each start is reported apart from the steady state
+ */
+public class LatencyStatsTest {
+
+    private static final long MILLI = 1000000L;
+
+    @Test
+    public void firstBeat_isKeptApartFromSteadyState() {
+        LatencyStats stats = new LatencyStats();
+        stats.markStart(10);
+
+        // sounds from before the start are not counted
+        stats.record(9, 500 * MILLI);
+        assertEquals(-1, stats.getFirstBeatLatency());
+        assertEquals(-1, stats.getSteadyStateLatency());
+
+        stats.record(10, 40 * MILLI);
+        stats.record(11, 10 * MILLI);
+        stats.record(12, 14 * MILLI);
+
+        assertEquals(40 * MILLI, stats.getFirstBeatLatency());
+        assertEquals(12 * MILLI, stats.getSteadyStateLatency());
+        assertEquals(14 * MILLI, stats.getMaxSteadyStateLatency());
+        assertEquals(2, stats.getSteadyStateCount());
+        assertEquals("first beat 40.0 ms, steady state 12.0 ms (max 14.0 ms over 2)", stats.toString());
+    }
+
+    @Test
+    public void firstBeat_isTheFirstSoundAfterTheStart() {
+        LatencyStats stats = new LatencyStats();
+        stats.markStart(0);
+
+        // the downbeat of a pattern may be silent, so the first sound has a later sequence
+        stats.record(3, 20 * MILLI);
+        assertEquals(20 * MILLI, stats.getFirstBeatLatency());
+    }
+
+    @Test
+    public void markStart_forgetsThePreviousStart() {
+        LatencyStats stats = new LatencyStats();
+        stats.markStart(0);
+        stats.record(0, 40 * MILLI);
+        stats.record(1, 10 * MILLI);
+
+        stats.markStart(2);
+        stats.record(2, 12 * MILLI);
+
+        assertEquals(12 * MILLI, stats.getFirstBeatLatency());
+        assertEquals(0, stats.getSteadyStateCount());
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.beatty.metronome;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds the monitor looper logging and ticks on a virtual clock
+ */
+public class MainThreadStallMonitorTest {
+
+    private static final long START = 5000000000L;
+    private static final long MILLI = 1000000L;
+
+    private SimulatedTime time;
+    private MainThreadStallMonitor monitor;
+
+    @Before
+    public void setUp() {
+        time = new SimulatedTime(START);
+        monitor = new MainThreadStallMonitor(time, 16 * MILLI, 4);
+    }
+
+    /**
+     * Dispatches a message that runs for a while
+     */
+    private void message(String name, long duration) {
+        monitor.println(">>>>> Dispatching to Handler (test) {1} " + name + ": 0");
+        time.runUntil(time.nanoTime() + duration);
+        monitor.println("<<<<< Finished to Handler (test) {1} " + name);
+    }
+
+    @Test
+    public void shortMessages_areNotStalls() {
+        message("layout", 15 * MILLI);
+        message("draw", 2 * MILLI);
+
+        assertEquals(0, monitor.getStallCount());
+    }
+
+    @Test
+    public void longMessage_isLinkedToTheTicksItDelayed() {
+        // a tick on time is not linked to anything
+        monitor.onTick(time.nanoTime(), time.nanoTime());
+
+        long stallStart = time.nanoTime();
+        message("createNotes", 40 * MILLI);
+
+        // two ticks were due during the stall and ran right after it
+        monitor.onTick(stallStart + 10 * MILLI, time.nanoTime());
+        monitor.onTick(stallStart + 30 * MILLI, time.nanoTime());
+
+        // a later tick is on time again
+        time.runUntil(time.nanoTime() + 20 * MILLI);
+        monitor.onTick(time.nanoTime(), time.nanoTime());
+
+        assertEquals(1, monitor.getStallCount());
+        MainThreadStallMonitor.Stall stall = monitor.getStall(0);
+        assertEquals(stallStart, stall.getStart());
+        assertEquals(40 * MILLI, stall.getDuration());
+        assertEquals("Handler (test) {1} createNotes: 0", stall.getMessage());
+        assertEquals(2, stall.getDelayedTicks());
+        assertEquals(30 * MILLI, stall.getMaxTickLateness());
+
+        assertEquals(4, monitor.getTicks());
+        assertEquals(30 * MILLI, monitor.getMaxTickLateness());
+    }
+
+    @Test
+    public void log_keepsTheMostRecentStalls() {
+        for (int i = 0; i < 6; i++) {
+            message("stall" + i, (20 + i) * MILLI);
+        }
+
+        assertEquals(6, monitor.getStallCount());
+        assertEquals(4, monitor.getLoggedStalls());
+        assertEquals(22 * MILLI, monitor.getStall(0).getDuration());
+        assertEquals(25 * MILLI, monitor.getStall(3).getDuration());
+    }
+
+    @Test
+    public void export_listsStalls() {
+        message("gc", 25 * MILLI);
+        monitor.onTick(time.nanoTime() - 5 * MILLI, time.nanoTime());
+
+        StringWriter out = new StringWriter();
+        monitor.export(out);
+        String[] lines = out.toString().split("\\r?\\n");
+
+        assertEquals(3, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("stalls: 1, ticks: 1, max tick lateness: 5.000 ms"));
+        assertEquals("5000.000\t25.000\t1\t5.000\tHandler (test) {1} gc: 0", lines[2]);
+    }
+}
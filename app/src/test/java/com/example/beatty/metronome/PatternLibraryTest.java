@@ -0,0 +1,118 @@
+package com.example.beatty.metronome;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that patterns written to a library are read back unchanged, one at a time
+ */
+public class PatternLibraryTest {
+
+    private static byte[] write(RhythmPattern... patterns) throws IOException {
+        PatternLibraryWriter writer = new PatternLibraryWriter();
+        for (RhythmPattern pattern : patterns) {
+            writer.add(pattern);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(out);
+        return out.toByteArray();
+    }
+
+    private static RhythmPattern clave() {
+        BeatScheduler.Accent[] accents = new BeatScheduler.Accent[16];
+        Arrays.fill(accents, BeatScheduler.Accent.SUBDIVISION);
+        accents[0] = BeatScheduler.Accent.EMPHASIS;
+        accents[3] = BeatScheduler.Accent.BEAT;
+        accents[6] = BeatScheduler.Accent.BEAT;
+        accents[10] = BeatScheduler.Accent.BEAT;
+        accents[12] = BeatScheduler.Accent.BEAT;
+        return new RhythmPattern("Son clave 3-2", TimeSignature.COMMON_TIME, 4, accents);
+    }
+
+    @Test
+    public void patterns_roundTrip() throws IOException {
+        RhythmPattern meter = RhythmPattern.of(new TimeSignature(7, 8), 3);
+        RhythmPattern named = new RhythmPattern("7/8 in triplets", meter.getTimeSignature(), 3, accentsOf(meter));
+
+        PatternLibrary library = new PatternLibrary(ByteBuffer.wrap(write(clave(), named)));
+
+        assertEquals(2, library.size());
+        assertEquals("Son clave 3-2", library.getName(0));
+        assertEquals("7/8 in triplets", library.getName(1));
+
+        RhythmPattern loaded = library.load(0);
+        assertEquals(clave(), loaded);
+        assertEquals("Son clave 3-2", loaded.getName());
+        assertEquals(4, loaded.getSubdivision());
+
+        assertEquals(meter, library.load(1));
+    }
+
+    @Test
+    public void records_areCompact() throws IOException {
+        byte[] bytes = write(clave());
+
+        // header, one index entry, name and six single byte varints for the meter and accents
+        int expected = PatternLibrary.HEADER_SIZE + 4 + 1 + "Son clave 3-2".length() + 3 + 1 + 5;
+        assertEquals(expected, bytes.length);
+    }
+
+    @Test
+    public void longPatterns_useMultiByteVarints() throws IOException {
+        // slots far apart need more than seven bits for the distance
+        BeatScheduler.Accent[] accents = new BeatScheduler.Accent[64 * 7];
+        Arrays.fill(accents, BeatScheduler.Accent.SUBDIVISION);
+        accents[0] = BeatScheduler.Accent.EMPHASIS;
+        accents[accents.length - 1] = BeatScheduler.Accent.BEAT;
+        RhythmPattern sparse = new RhythmPattern("Sparse", new TimeSignature(64, 4), 7, accents);
+
+        PatternLibrary library = new PatternLibrary(ByteBuffer.wrap(write(sparse)));
+
+        assertEquals(sparse, library.load(0));
+    }
+
+    @Test
+    public void manyPatterns_areIndexed() throws IOException {
+        PatternLibraryWriter writer = new PatternLibraryWriter();
+        for (int i = 0; i < 5000; i++) {
+            TimeSignature signature = new TimeSignature(2 + i % 11, 8);
+            writer.add(new RhythmPattern("Pattern " + i, signature, 1 + i % 4,
+                    accentsOf(RhythmPattern.of(signature, 1 + i % 4))));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(out);
+
+        PatternLibrary library = new PatternLibrary(ByteBuffer.wrap(out.toByteArray()));
+
+        assertEquals(5000, library.size());
+        assertEquals("Pattern 4321", library.getName(4321));
+        assertEquals(RhythmPattern.of(new TimeSignature(2 + 4321 % 11, 8), 1 + 4321 % 4), library.load(4321));
+    }
+
+    @Test(expected = IOException.class)
+    public void wrongMagic_isRejected() throws IOException {
+        byte[] bytes = write(clave());
+        bytes[0] = 0;
+        new PatternLibrary(ByteBuffer.wrap(bytes));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void missingPattern_isRejected() throws IOException {
+        new PatternLibrary(ByteBuffer.wrap(write(clave()))).load(1);
+    }
+
+    private static BeatScheduler.Accent[] accentsOf(RhythmPattern pattern) {
+        BeatScheduler.Accent[] accents = new BeatScheduler.Accent[pattern.getSlotsPerMeasure()];
+        for (int i = 0; i < accents.length; i++) {
+            accents[i] = pattern.getAccent(i);
+        }
+        return accents;
+    }
+}
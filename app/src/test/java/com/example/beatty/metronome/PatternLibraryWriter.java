@@ -0,0 +1,91 @@
+package com.example.beatty.metronome;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes patterns in the format read by {@link PatternLibrary}
+ */
+public class PatternLibraryWriter {
+
+    private final List<byte[]> records = new ArrayList<>();
+
+    /**
+     * Adds a pattern after the ones already added
+     * @param pattern a pattern with a name
+     */
+    public void add(RhythmPattern pattern) {
+        if (pattern.getName() == null) {
+            throw new IllegalArgumentException("Library patterns must have a name");
+        }
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+
+        byte[] name = pattern.getName().getBytes(PatternLibrary.UTF_8);
+        writeVarint(record, name.length);
+        record.write(name, 0, name.length);
+
+        writeVarint(record, pattern.getTimeSignature().getBeatsPerMeasure());
+        writeVarint(record, pattern.getTimeSignature().getBeatType());
+        writeVarint(record, pattern.getSubdivision());
+
+        int accented = 0;
+        for (int i = 0; i < pattern.getSlotsPerMeasure(); i++) {
+            if (pattern.getAccent(i) != BeatScheduler.Accent.SUBDIVISION) accented++;
+        }
+        writeVarint(record, accented);
+
+        int previous = 0;
+        for (int i = 0; i < pattern.getSlotsPerMeasure(); i++) {
+            BeatScheduler.Accent accent = pattern.getAccent(i);
+            if (accent != BeatScheduler.Accent.SUBDIVISION) {
+                writeVarint(record, ((i - previous) << 2) | accent.ordinal());
+                previous = i;
+            }
+        }
+
+        records.add(record.toByteArray());
+    }
+
+    /**
+     * Writes the header, the index and the records of all the added patterns
+     * @param out
+     * @throws IOException
+     */
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+
+        data.writeInt(PatternLibrary.MAGIC);
+        data.writeInt(PatternLibrary.VERSION);
+        data.writeInt(records.size());
+
+        int offset = PatternLibrary.HEADER_SIZE + 4 * records.size();
+        for (byte[] record : records) {
+            data.writeInt(offset);
+            offset += record.length;
+        }
+
+        for (byte[] record : records) {
+            data.write(record);
+        }
+
+        data.flush();
+    }
+
+    /**
+     * Writes an unsigned varint
+     * @param out
+     * @param value
+     */
+    static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.beatty.metronome;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the length, gain and frequency preservation of the resampler
+ */
+public class PolyphaseResamplerTest {
+
+    @Test
+    public void sameRate_copiesInput() {
+        short[] input = {1, -2, 3, -4, 5};
+        PolyphaseResampler resampler = new PolyphaseResampler(48000, 48000);
+
+        assertArrayEquals(input, resampler.process(input));
+    }
+
+    @Test
+    public void outputLength_followsRatio() {
+        PolyphaseResampler up = new PolyphaseResampler(44100, 48000);
+        assertEquals(48000, up.outputLength(44100));
+        assertEquals(160, up.outputLength(147));
+
+        PolyphaseResampler down = new PolyphaseResampler(48000, 44100);
+        assertEquals(44100, down.outputLength(48000));
+    }
+
+    @Test
+    public void constantSignal_keepsLevel() {
+        short[] input = new short[4410];
+        Arrays.fill(input, (short) 10000);
+
+        short[] output = new PolyphaseResampler(44100, 48000).process(input);
+
+        // ignore the edges where the filter reaches past the sound
+        for (int i = 100; i < output.length - 100; i++) {
+            assertEquals(10000, output[i], 20);
+        }
+    }
+
+    @Test
+    public void sine_keepsFrequency() {
+        int inputRate = 22050;
+        int outputRate = 48000;
+        double frequency = 440;
+        short[] input = new short[inputRate];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (short) (8000 * Math.sin(2 * Math.PI * frequency * i / inputRate));
+        }
+
+        short[] output = new PolyphaseResampler(inputRate, outputRate).process(input);
+
+        // one second of a 440 Hz tone crosses zero upwards about 440 times
+        int crossings = 0;
+        for (int i = 1; i < output.length; i++) {
+            if (output[i - 1] < 0 && output[i] >= 0) crossings++;
+        }
+        assertEquals(440, crossings, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void oddTaps_rejected() {
+        new PolyphaseResampler(44100, 48000, 15);
+    }
+}
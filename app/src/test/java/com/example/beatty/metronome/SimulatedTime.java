@@ -0,0 +1,108 @@
+package com.example.beatty.metronome;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A virtual clock and executor for deterministic timing tests.  Time only moves when
+ * {@link #runUntil(long)} runs the next task, so hours of playback take milliseconds.
+ * Stalls can be injected to delay the tasks that fall inside them, like a blocked looper
+ */
+public class SimulatedTime implements Clock, TickExecutor {
+
+    private static class Task implements Comparable<Task> {
+        final Runnable runnable;
+        final long time;
+        final long order;
+
+        Task(Runnable runnable, long time, long order) {
+            this.runnable = runnable;
+            this.time = time;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (time != other.time) return time < other.time ? -1 : 1;
+            return order < other.order ? -1 : (order == other.order ? 0 : 1);
+        }
+    }
+
+    private static class Stall {
+        final long start;
+        final long duration;
+
+        Stall(long start, long duration) {
+            this.start = start;
+            this.duration = duration;
+        }
+    }
+
+    private final PriorityQueue<Task> tasks = new PriorityQueue<>();
+    private final List<Stall> stalls = new ArrayList<>();
+    private long now;
+    private long order;
+
+    public SimulatedTime(long start) {
+        this.now = start;
+    }
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    @Override
+    public void schedule(Runnable task, long atNanos) {
+        cancel(task);
+        tasks.add(new Task(task, atNanos, order++));
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        for (Task t : new ArrayList<>(tasks)) {
+            if (t.runnable == task) tasks.remove(t);
+        }
+    }
+
+    /**
+     * Blocks the executor from {@code start} for {@code duration}.  A task due inside the
+     * stall runs when it ends
+     * @param start
+     * @param duration
+     */
+    public void addStall(long start, long duration) {
+        stalls.add(new Stall(start, duration));
+    }
+
+    /**
+     * Runs tasks in time order until the next one is due after {@code end}, then moves the
+     * clock to {@code end}
+     * @param end
+     */
+    public void runUntil(long end) {
+        while (!tasks.isEmpty() && tasks.peek().time <= end) {
+            Task task = tasks.poll();
+            now = Math.max(now, task.time);
+
+            for (Stall stall : stalls) {
+                if (now >= stall.start && now < stall.start + stall.duration) {
+                    now = stall.start + stall.duration;
+                }
+            }
+
+            task.runnable.run();
+        }
+
+        now = Math.max(now, end);
+    }
+
+    /**
+     * The number of tasks waiting to run
+     * @return
+     */
+    public int pendingTasks() {
+        return tasks.size();
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.beatty.metronome;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the visual level steps down under load and back up once the ticks are on time
+ */
+public class VisualGovernorTest {
+
+    private static final long START = 5000000000L;
+    private static final long MILLI = 1000000L;
+    private static final long SECOND = 1000 * MILLI;
+
+    private VisualGovernor governor;
+
+    @Before
+    public void setUp() {
+        governor = new VisualGovernor();
+    }
+
+    @Test
+    public void onTimeTicks_keepFullLevel() {
+        for (long t = START; t < START + 60 * SECOND; t += 100 * MILLI) {
+            governor.onTick(t, t + 2 * MILLI, 0);
+        }
+
+        assertEquals(VisualGovernor.Level.FULL, governor.getLevel());
+        assertEquals(0, governor.getLevelChanges());
+    }
+
+    @Test
+    public void missesWithinBudget_keepLevel() {
+        for (long t = START; t < START + 60 * SECOND; t += 100 * MILLI) {
+            // one late tick a second stays under the budget of two a window
+            boolean late = (t - START) % SECOND == 0;
+            governor.onTick(t, t + (late ? 20 * MILLI : 0), 0);
+        }
+
+        assertEquals(VisualGovernor.Level.FULL, governor.getLevel());
+    }
+
+    @Test
+    public void overBudget_stepsDownOneLevelAtATime() {
+        long t = START;
+        for (int i = 0; i < 3; i++, t += 100 * MILLI) {
+            governor.onTick(t, t + 20 * MILLI, 0);
+        }
+        assertEquals(VisualGovernor.Level.NO_SUBDIVISIONS, governor.getLevel());
+
+        // skipped slots count as misses too
+        governor.onTick(t, t, 3);
+        assertEquals(VisualGovernor.Level.NO_SPARK, governor.getLevel());
+
+        governor.onTick(t + 100 * MILLI, t + 100 * MILLI, 5);
+        governor.onTick(t + 200 * MILLI, t + 200 * MILLI, 5);
+        assertEquals(VisualGovernor.Level.REDUCED_RATE, governor.getLevel());
+        assertEquals(3, governor.getLevelChanges());
+    }
+
+    @Test
+    public void stallsUnderLoad_degradeThenRestore() {
+        final SimulatedTime time = new SimulatedTime(START);
+        final BeatScheduler[] scheduler = new BeatScheduler[1];
+        final long[] missed = new long[1];
+        final VisualGovernor.Level[] lowest = {VisualGovernor.Level.FULL};
+
+        scheduler[0] = new BeatScheduler(time, time, new BeatScheduler.Listener() {
+            @Override
+            public void onSlot(int position, BeatScheduler.Accent accent, long slotTime) {
+                governor.onTick(slotTime, time.nanoTime(), scheduler[0].getMissedSlots() - missed[0]);
+                missed[0] = scheduler[0].getMissedSlots();
+
+                if (governor.getLevel().compareTo(lowest[0]) > 0) {
+                    lowest[0] = governor.getLevel();
+                }
+            }
+        });
+        scheduler[0].setMeter(TimeSignature.COMMON_TIME, 4);
+        scheduler[0].start();
+
+        // ten seconds of a busy main thread, then a minute of quiet
+        for (long stall = START + SECOND; stall < START + 11 * SECOND; stall += 150 * MILLI) {
+            time.addStall(stall, 60 * MILLI);
+        }
+
+        time.runUntil(START + 11 * SECOND);
+        assertEquals(VisualGovernor.Level.REDUCED_RATE, governor.getLevel());
+
+        time.runUntil(START + 71 * SECOND);
+        assertEquals(VisualGovernor.Level.REDUCED_RATE, lowest[0]);
+        assertEquals(VisualGovernor.Level.FULL, governor.getLevel());
+        assertEquals(6, governor.getLevelChanges());
+    }
+
+    @Test
+    public void restart_keepsLevelButForgetsWindow() {
+        long t = START;
+        for (int i = 0; i < 3; i++, t += 100 * MILLI) {
+            governor.onTick(t, t + 20 * MILLI, 0);
+        }
+        governor.onTick(t, t + 20 * MILLI, 0);
+        governor.onTick(t, t + 20 * MILLI, 0);
+
+        governor.restart();
+        governor.onTick(t + 60 * SECOND, t + 60 * SECOND + 20 * MILLI, 0);
+
+        // two misses before the restart and one after are each within the budget
+        assertEquals(VisualGovernor.Level.NO_SUBDIVISIONS, governor.getLevel());
+        assertEquals(1, governor.getLevelChanges());
+    }
+}